@@ -7,6 +7,8 @@ import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
+import ai2016.EventLog;
+import ai2016.EventLog.Level;
 import negotiator.bidding.BidDetails;
 import negotiator.boaframework.BOAparameter;
 import negotiator.boaframework.NegotiationSession;
@@ -28,6 +30,13 @@ public class BestBid extends OMStrategy {
 	 */
 	double updateThreshold = 1.1;
 
+	/**
+	 * source of the random bids. In deterministic mode
+	 * (-Dai2016.deterministic=true) it is seeded with -Dai2016.seed.
+	 */
+	private Random random = Boolean.getBoolean("ai2016.deterministic") ? new Random(
+			Long.getLong("ai2016.seed", 0)) : new Random();
+
 	/**
 	 * Empty constructor for the BOA framework.
 	 */
@@ -47,7 +56,7 @@ public class BestBid extends OMStrategy {
 		try {
 			super.init(negotiationSession, model);
 		} catch (Exception e) {
-			e.printStackTrace();
+			EventLog.log(Level.ERROR, "BestBid", "init failed", e);
 		}
 	}
 
@@ -71,7 +80,8 @@ public class BestBid extends OMStrategy {
 		if (parameters.get("t") != null) {
 			updateThreshold = parameters.get("t").doubleValue();
 		} else {
-			System.out.println("OMStrategy assumed t = 1.1");
+			EventLog.log(Level.INFO, "BestBid", "OMStrategy assumed t",
+					updateThreshold);
 		}
 	}
 
@@ -110,8 +120,7 @@ public class BestBid extends OMStrategy {
 		}
 		// 4. The opponent model did not work, therefore, offer a random bid.
 		if (allWereZero) {
-			Random r = new Random();
-			return allBids.get(r.nextInt(allBids.size()));
+			return allBids.get(random.nextInt(allBids.size()));
 		}
 		return bestBid;
 	}
@@ -6,6 +6,8 @@ import java.util.HashSet;
 import java.util.Map.Entry;
 import java.util.Set;
 
+import ai2016.EventLog;
+import ai2016.EventLog.Level;
 import negotiator.Bid;
 import negotiator.bidding.BidDetails;
 import negotiator.boaframework.BOAparameter;
@@ -83,7 +85,8 @@ public class HardHeadedFrequencyModel extends OpponentModel {
 						.getValues())
 					((EvaluatorDiscrete) e.getValue()).setEvaluation(vd, 1);
 			} catch (Exception ex) {
-				ex.printStackTrace();
+				EventLog.log(Level.ERROR, "HardHeadedFrequencyModel",
+						"model initialization failed", ex);
 			}
 		}
 	}
@@ -110,7 +113,8 @@ public class HardHeadedFrequencyModel extends OpponentModel {
 						.getBid().getValue(i.getNumber()))) ? 0 : 1);
 			}
 		} catch (Exception ex) {
-			ex.printStackTrace();
+			EventLog.log(Level.ERROR, "HardHeadedFrequencyModel",
+					"bid difference failed", ex);
 		}
 
 		return diff;
@@ -188,7 +192,8 @@ public class HardHeadedFrequencyModel extends OpponentModel {
 																.getNumber())))));
 			}
 		} catch (Exception ex) {
-			ex.printStackTrace();
+			EventLog.log(Level.ERROR, "HardHeadedFrequencyModel",
+					"model update failed", ex);
 		}
 	}
 
@@ -198,7 +203,8 @@ public class HardHeadedFrequencyModel extends OpponentModel {
 		try {
 			result = opponentUtilitySpace.getUtility(bid);
 		} catch (Exception e) {
-			e.printStackTrace();
+			EventLog.log(Level.ERROR, "HardHeadedFrequencyModel",
+					"bid evaluation failed", e);
 		}
 		return result;
 	}
@@ -1,10 +1,14 @@
 package boaexamplepackage;
 
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
+import ai2016.EventLog;
+import ai2016.EventLog.Level;
 import negotiator.bidding.BidDetails;
 import negotiator.boaframework.BOAparameter;
 import negotiator.boaframework.NegotiationSession;
@@ -41,6 +45,27 @@ public class TimeDependent_Offering extends OfferingStrategy {
 	/** Outcome space */
 	SortedOutcomeSpace outcomespace;
 
+	/** Width by which the window of candidate bids for the OM strategy grows */
+	private static final double WINDOW = 0.01;
+	/** Number of candidate bids the OM strategy should choose from */
+	private static final int MIN_CANDIDATES = 3;
+	/**
+	 * Number of time buckets of the precomputed concession schedule, 0 to
+	 * compute the target and search the outcome space every turn
+	 */
+	private int buckets;
+	/** All outcomes sorted descending on utility, and their utilities */
+	private List<BidDetails> sortedOutcomes;
+	private double[] utilities;
+	/**
+	 * Per bucket boundary: the target utility, the index of the outcome
+	 * nearest to it and the range of candidate outcomes for the OM strategy
+	 */
+	private double[] targets;
+	private int[] nearest;
+	private int[] candidatesFrom;
+	private int[] candidatesTo;
+
 	/**
 	 * Empty constructor used for reflexion. Note this constructor assumes that
 	 * init is called next.
@@ -99,12 +124,106 @@ public class TimeDependent_Offering extends OfferingStrategy {
 
 			this.opponentModel = model;
 			this.omStrategy = oms;
+
+			if (parameters.get("buckets") != null
+					&& parameters.get("buckets") > 0) {
+				buckets = parameters.get("buckets").intValue();
+				computeSchedule();
+			}
 		} else {
 			throw new Exception(
 					"Constant \"e\" for the concession speed was not set.");
 		}
 	}
 
+	/**
+	 * Precomputes the target utility at every bucket boundary, together with
+	 * the outcome nearest to it and the outcomes the OM strategy chooses
+	 * from, which are the bids in a window above the target that is widened
+	 * until it holds enough of them.
+	 */
+	private void computeSchedule() {
+		BidDetails[] outcomes = outcomespace.getAllOutcomes().toArray(
+				new BidDetails[0]);
+		Arrays.sort(outcomes, (x, y) -> Double.compare(
+				y.getMyUndiscountedUtil(), x.getMyUndiscountedUtil()));
+		sortedOutcomes = Arrays.asList(outcomes);
+		utilities = new double[outcomes.length];
+		for (int i = 0; i < outcomes.length; i++) {
+			utilities[i] = outcomes[i].getMyUndiscountedUtil();
+		}
+
+		targets = new double[buckets + 1];
+		nearest = new int[buckets + 1];
+		candidatesFrom = new int[buckets + 1];
+		candidatesTo = new int[buckets + 1];
+		for (int b = 0; b <= buckets; b++) {
+			targets[b] = p((double) b / buckets);
+			nearest[b] = nearestIndex(targets[b], 0, utilities.length - 1);
+			double upper = targets[b] + WINDOW;
+			int to = indexBelow(targets[b]);
+			int from = indexBelow(upper);
+			while (to - from < MIN_CANDIDATES && upper < 1.01) {
+				upper += WINDOW;
+				from = indexBelow(upper);
+			}
+			candidatesFrom[b] = from;
+			candidatesTo[b] = to - from < MIN_CANDIDATES ? from : to;
+		}
+		EventLog.log(Level.INFO, "TimeDependent_Offering",
+				"concession schedule buckets", buckets);
+	}
+
+	/**
+	 * Returns the index of the first outcome with a utility below the given
+	 * one.
+	 */
+	private int indexBelow(double utility) {
+		return indexBelow(utility, 0, utilities.length);
+	}
+
+	/**
+	 * Returns the index of the first outcome with a utility below the given
+	 * one, between two indices.
+	 */
+	private int indexBelow(double utility, int from, int to) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (utilities[mid] >= utility) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the index of the outcome with the utility nearest to the given
+	 * one, between two indices.
+	 */
+	private int nearestIndex(double utility, int from, int to) {
+		int low = from;
+		int high = to;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (utilities[mid] >= utility) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		// low is the first outcome below the utility, or the last one
+		if (low > from
+				&& Math.abs(utilities[low - 1] - utility) <= Math
+						.abs(utilities[low] - utility)) {
+			return low - 1;
+		}
+		return low;
+	}
+
 	@Override
 	public BidDetails determineOpeningBid() {
 		return determineNextBid();
@@ -118,13 +237,15 @@ public class TimeDependent_Offering extends OfferingStrategy {
 	 */
 	@Override
 	public BidDetails determineNextBid() {
+		if (targets != null) {
+			return determineScheduledBid();
+		}
 		double time = negotiationSession.getTime();
 		double utilityGoal;
 		utilityGoal = p(time);
 
-		// System.out.println("[e=" + e + ", Pmin = " +
-		// BilateralAgent.round2(Pmin) + "] t = " + BilateralAgent.round2(time)
-		// + ". Aiming for " + utilityGoal);
+		EventLog.log(Level.DEBUG, "TimeDependent_Offering", "aiming for",
+				utilityGoal);
 
 		// if there is no opponent model available
 		if (opponentModel instanceof NoModel) {
@@ -136,6 +257,48 @@ public class TimeDependent_Offering extends OfferingStrategy {
 		return nextBid;
 	}
 
+	/**
+	 * Looks up the bid in the precomputed schedule. Without an opponent model
+	 * the target is interpolated between the two bucket boundaries around the
+	 * current time, and the nearest bid is searched between their nearest
+	 * bids only. With an opponent model, the window of candidates of the
+	 * interpolated target is searched within the windows of the two bucket
+	 * boundaries; if it holds too few bids, the OM strategy chooses from the
+	 * candidates of the nearest bucket boundary.
+	 */
+	private BidDetails determineScheduledBid() {
+		double position = Math.max(0, Math.min(1, negotiationSession.getTime()))
+				* buckets;
+		int b = Math.min((int) position, buckets - 1);
+		double utilityGoal = targets[b] + (position - b)
+				* (targets[b + 1] - targets[b]);
+
+		if (opponentModel instanceof NoModel) {
+			int from = Math.min(nearest[b], nearest[b + 1]);
+			int to = Math.max(nearest[b], nearest[b + 1]);
+			nextBid = sortedOutcomes.get(nearestIndex(utilityGoal, from, to));
+			return nextBid;
+		}
+
+		// refine the window to the interpolated target
+		int low = Math.min(candidatesFrom[b], candidatesFrom[b + 1]);
+		int high = Math.max(candidatesTo[b], candidatesTo[b + 1]);
+		int from = indexBelow(utilityGoal + WINDOW, low, high);
+		int to = indexBelow(utilityGoal, low, high);
+		if (to - from >= MIN_CANDIDATES) {
+			nextBid = omStrategy.getBid(sortedOutcomes.subList(from, to));
+		} else {
+			int boundary = (int) Math.round(position);
+			if (candidatesTo[boundary] > candidatesFrom[boundary]) {
+				nextBid = omStrategy.getBid(sortedOutcomes.subList(
+						candidatesFrom[boundary], candidatesTo[boundary]));
+			} else {
+				nextBid = sortedOutcomes.get(nearest[boundary]);
+			}
+		}
+		return nextBid;
+	}
+
 	/**
 	 * From [1]:
 	 * 
@@ -178,6 +341,8 @@ public class TimeDependent_Offering extends OfferingStrategy {
 		set.add(new BOAparameter("k", new BigDecimal(0.0), "Offset"));
 		set.add(new BOAparameter("min", new BigDecimal(0.0), "Minimum utility"));
 		set.add(new BOAparameter("max", new BigDecimal(0.99), "Maximum utility"));
+		set.add(new BOAparameter("buckets", new BigDecimal(0),
+				"Time buckets of the precomputed concession schedule, 0 to search every turn"));
 
 		return set;
 	}
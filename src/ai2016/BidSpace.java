@@ -0,0 +1,40 @@
+package ai2016;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import negotiator.Bid;
+
+/**
+ * The bids of the domain that the agent can search by its own utility.
+ */
+public interface BidSpace {
+
+	/**
+	 * Gets bids with a utility value between the lower and upper bound.
+	 * @param lower
+	 * 			lower bound of the range
+	 * @param upper
+	 * 			upper bound of the range
+	 * @return the list of bids in this range
+	 */
+	ArrayList<Bid> getBidsBetween(double lower, double upper);
+
+	/**
+	 * Picks a random bid with a utility value between the lower and upper bound.
+	 * @param lower
+	 * 			lower bound of the range
+	 * @param upper
+	 * 			upper bound of the range
+	 * @param random
+	 * 			source of randomness
+	 * @return the bid, or null if there is no bid in this range
+	 */
+	Bid getRandomBid(double lower, double upper, Random random);
+
+	/**
+	 * Returns an estimate of the memory used by this bid space.
+	 * @return the number of bytes
+	 */
+	long getFootprint();
+}
@@ -0,0 +1,207 @@
+package ai2016;
+
+import java.util.AbstractList;
+import java.util.List;
+
+import negotiator.Bid;
+
+/**
+ * Sorted bids stored as outcome codes (see OutcomeEncoder) next to their
+ * utilities, 16 bytes per bid. Bids are decoded when they are accessed.
+ */
+public class EncodedSortedBids extends SortedBids {
+	private final OutcomeEncoder encoder;
+	private final long[] codes;
+
+	/**
+	 * Receives the codes of the bids with their utilities while they are
+	 * evaluated, so that a receiver decodes only the bids it keeps.
+	 */
+	public interface Progress {
+		/**
+		 * Reports an evaluated bid.
+		 * @param code
+		 * 			the code of the bid
+		 * @param utility
+		 * 			our utility of the bid
+		 */
+		void accept(long code, double utility);
+	}
+
+	/**
+	 * Enumerates all codes of the domain and sorts them on utility.
+	 * @param encoder
+	 * 			the encoder of the domain, with fewer than Integer.MAX_VALUE outcomes
+	 * @param evaluator
+	 * 			our own utility function
+	 */
+	public EncodedSortedBids(OutcomeEncoder encoder, UtilityEvaluator evaluator) {
+		this(encoder, evaluator, null);
+	}
+
+	/**
+	 * Enumerates all codes of the domain and sorts them on utility, reporting
+	 * every bid as soon as its utility is known.
+	 * @param encoder
+	 * 			the encoder of the domain, with fewer than Integer.MAX_VALUE outcomes
+	 * @param evaluator
+	 * 			our own utility function
+	 * @param progress
+	 * 			receives the code of every bid with its utility, or null
+	 */
+	public EncodedSortedBids(OutcomeEncoder encoder, UtilityEvaluator evaluator, Progress progress) {
+		super(new double[checkedCount(encoder)]);
+		this.encoder = encoder;
+		codes = new long[utilities.length];
+		for(int i = 0; i < codes.length; i++) {
+			codes[i] = i;
+			//compiled utilities are read from the code, the bid is only decoded when needed
+			if(evaluator.isCompiled()) {
+				utilities[i] = evaluator.getUtility((long) i);
+			} else {
+				utilities[i] = evaluator.getUtility(encoder.decode(i));
+			}
+			if(progress != null) {
+				progress.accept(i, utilities[i]);
+			}
+		}
+		sort(utilities, codes, 0, codes.length - 1);
+	}
+
+	/**
+	 * Wraps codes that are already sorted.
+	 * @param encoder
+	 * 			the encoder of the domain
+	 * @param codes
+	 * 			the codes, sorted ascending on utility
+	 * @param utilities
+	 * 			our utility of each code
+	 */
+	EncodedSortedBids(OutcomeEncoder encoder, long[] codes, double[] utilities) {
+		super(utilities);
+		this.encoder = encoder;
+		this.codes = codes;
+	}
+
+	private static int checkedCount(OutcomeEncoder encoder) {
+		if(encoder.getOutcomeCount() > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Too many outcomes to encode: " + encoder.getOutcomeCount());
+		}
+		return (int) encoder.getOutcomeCount();
+	}
+
+	/**
+	 * Estimates the footprint of this representation before building it.
+	 * @param count
+	 * 			number of bids
+	 * @return the number of bytes
+	 */
+	public static long estimateFootprint(long count) {
+		return count > Long.MAX_VALUE / 16 ? Long.MAX_VALUE : count * 16;
+	}
+
+	/**
+	 * Returns the code of the bid at an index.
+	 * @param index
+	 * 			position in the sorted order
+	 * @return the code
+	 */
+	public long getCode(int index) {
+		return codes[index];
+	}
+
+	@Override
+	public long getCode(int index, OutcomeEncoder encoder) {
+		return codes[index];
+	}
+
+	@Override
+	public Bid getBid(int index) {
+		return encoder.decode(codes[index]);
+	}
+
+	@Override
+	public List<Bid> getBids() {
+		return new AbstractList<Bid>() {
+			@Override
+			public Bid get(int index) {
+				return getBid(index);
+			}
+
+			@Override
+			public int size() {
+				return codes.length;
+			}
+		};
+	}
+
+	@Override
+	public long getFootprint() {
+		return estimateFootprint(codes.length);
+	}
+
+	@Override
+	public String toString() {
+		return "encoded bid arrays";
+	}
+
+	/**
+	 * Sorts both arrays ascending on the keys, with a quicksort that recurses
+	 * into the smaller part only. Boxing the entries would cost more memory
+	 * than the arrays themselves.
+	 */
+	private static void sort(double[] keys, long[] values, int low, int high) {
+		while(high - low > 16) {
+			//median of three as pivot
+			int mid = (low + high) >>> 1;
+			if(keys[mid] < keys[low]) {
+				swap(keys, values, mid, low);
+			}
+			if(keys[high] < keys[low]) {
+				swap(keys, values, high, low);
+			}
+			if(keys[high] < keys[mid]) {
+				swap(keys, values, high, mid);
+			}
+			double pivot = keys[mid];
+
+			int i = low;
+			int j = high;
+			while(i <= j) {
+				while(keys[i] < pivot) {
+					i++;
+				}
+				while(keys[j] > pivot) {
+					j--;
+				}
+				if(i <= j) {
+					swap(keys, values, i, j);
+					i++;
+					j--;
+				}
+			}
+			if(j - low < high - i) {
+				sort(keys, values, low, j);
+				low = i;
+			} else {
+				sort(keys, values, i, high);
+				high = j;
+			}
+		}
+		//insertion sort for the small remainder
+		for(int i = low + 1; i <= high; i++) {
+			for(int j = i; j > low && keys[j] < keys[j - 1]; j--) {
+				swap(keys, values, j, j - 1);
+			}
+		}
+	}
+
+	private static void swap(double[] keys, long[] values, int a, int b) {
+		double key = keys[a];
+		keys[a] = keys[b];
+		keys[b] = key;
+		long value = values[a];
+		values[a] = values[b];
+		values[b] = value;
+	}
+}
@@ -0,0 +1,261 @@
+package ai2016;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+
+/**
+ * Structured event log for the agent and the BOA components. Events are
+ * copied into a fixed ring buffer and written by a background thread, so
+ * logging never waits for console or file I/O. When the buffer is full, new
+ * events are dropped and counted instead of blocking. Events below the level
+ * threshold cost a single comparison.
+ *
+ * The threshold is set with -Dai2016.log=DEBUG|INFO|WARN|ERROR|OFF (default
+ * INFO) and the output goes to standard out, or to -Dai2016.log.file.
+ */
+public final class EventLog {
+	/**
+	 * Severity of an event.
+	 */
+	public enum Level {
+		DEBUG, INFO, WARN, ERROR, OFF
+	}
+
+	private static final int CAPACITY = 4096;
+	private static final long DRAIN_INTERVAL_MS = 100;
+
+	private static final Level threshold = parseLevel(System.getProperty("ai2016.log", "INFO"));
+
+	/**
+	 * A slot of the ring buffer. Slots are reused, so appending allocates nothing.
+	 */
+	private static class Event {
+		long time;
+		Level level;
+		String source;
+		String message;
+		double value;
+		boolean hasValue;
+		Throwable error;
+		String thread;
+
+		void copy(Event other) {
+			time = other.time;
+			level = other.level;
+			source = other.source;
+			message = other.message;
+			value = other.value;
+			hasValue = other.hasValue;
+			error = other.error;
+			thread = other.thread;
+		}
+	}
+
+	private static final Object lock = new Object();
+	private static final Event[] ring = newEvents();
+	//guarded by lock: events are written at head and drained from tail
+	private static long head = 0, tail = 0, dropped = 0;
+	private static Thread drainer = null;
+	private static PrintStream sink;
+
+	private EventLog() {
+	}
+
+	/**
+	 * Checks whether events of a level are recorded. Callers that need to
+	 * build a message should check this first.
+	 * @param level
+	 * 			the level of the event
+	 * @return true if the level is at or above the threshold
+	 */
+	public static boolean isEnabled(Level level) {
+		return level.ordinal() >= threshold.ordinal();
+	}
+
+	/**
+	 * Records an event.
+	 * @param level
+	 * 			the level of the event
+	 * @param source
+	 * 			the component that logs the event
+	 * @param message
+	 * 			what happened
+	 */
+	public static void log(Level level, String source, String message) {
+		if(isEnabled(level)) {
+			append(level, source, message, 0.0, false, null);
+		}
+	}
+
+	/**
+	 * Records an event with a numeric value.
+	 * @param level
+	 * 			the level of the event
+	 * @param source
+	 * 			the component that logs the event
+	 * @param message
+	 * 			what happened
+	 * @param value
+	 * 			the value belonging to the event
+	 */
+	public static void log(Level level, String source, String message, double value) {
+		if(isEnabled(level)) {
+			append(level, source, message, value, true, null);
+		}
+	}
+
+	/**
+	 * Records an event with an exception.
+	 * @param level
+	 * 			the level of the event
+	 * @param source
+	 * 			the component that logs the event
+	 * @param message
+	 * 			what happened
+	 * @param error
+	 * 			the exception
+	 */
+	public static void log(Level level, String source, String message, Throwable error) {
+		if(isEnabled(level)) {
+			append(level, source, message, 0.0, false, error);
+		}
+	}
+
+	private static void append(Level level, String source, String message, double value, boolean hasValue, Throwable error) {
+		synchronized(lock) {
+			if(head - tail == CAPACITY) {
+				dropped++;
+				return;
+			}
+			Event event = ring[(int) (head % CAPACITY)];
+			event.time = System.currentTimeMillis();
+			event.level = level;
+			event.source = source;
+			event.message = message;
+			event.value = value;
+			event.hasValue = hasValue;
+			event.error = error;
+			event.thread = Thread.currentThread().getName();
+			head++;
+
+			if(drainer == null) {
+				startDrainer();
+			} else if(head - tail >= CAPACITY / 2) {
+				lock.notify();
+			}
+		}
+	}
+
+	/**
+	 * Starts the background thread that writes the events. Called with the lock held.
+	 */
+	private static void startDrainer() {
+		String file = System.getProperty("ai2016.log.file");
+		sink = System.out;
+		if(file != null) {
+			try {
+				sink = new PrintStream(new FileOutputStream(file, true), false);
+			} catch (FileNotFoundException e) {
+				//report on the fallback sink, in the format of the other events
+				Event event = new Event();
+				event.time = System.currentTimeMillis();
+				event.level = Level.ERROR;
+				event.source = "EventLog";
+				event.message = "log file can not be opened, logging to standard out";
+				event.error = e;
+				event.thread = Thread.currentThread().getName();
+				write(event);
+			}
+		}
+		drainer = new Thread(EventLog::drainLoop, "ai2016-event-log");
+		drainer.setDaemon(true);
+		drainer.start();
+		Runtime.getRuntime().addShutdownHook(new Thread(EventLog::flush));
+	}
+
+	private static void drainLoop() {
+		Event[] batch = newEvents();
+		while(true) {
+			synchronized(lock) {
+				try {
+					lock.wait(DRAIN_INTERVAL_MS);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+			drain(batch);
+		}
+	}
+
+	/**
+	 * Writes all buffered events.
+	 */
+	public static void flush() {
+		drain(newEvents());
+	}
+
+	private static void drain(Event[] batch) {
+		int count;
+		long lost;
+		//copy the events out of the ring, format them without holding the lock
+		synchronized(lock) {
+			count = (int) (head - tail);
+			for(int i = 0; i < count; i++) {
+				Event slot = ring[(int) ((tail + i) % CAPACITY)];
+				batch[i].copy(slot);
+				slot.error = null;
+			}
+			tail = head;
+			lost = dropped;
+			dropped = 0;
+		}
+		if(sink == null) {
+			return;
+		}
+		synchronized(sink) {
+			if(lost > 0) {
+				sink.println("level=WARN source=EventLog event=\"dropped events\" value=" + lost);
+			}
+			for(int i = 0; i < count; i++) {
+				write(batch[i]);
+			}
+			sink.flush();
+		}
+	}
+
+	private static void write(Event event) {
+		StringBuilder line = new StringBuilder(96);
+		line.append("ts=").append(event.time)
+			.append(" level=").append(event.level)
+			.append(" source=").append(event.source)
+			.append(" thread=\"").append(event.thread).append('"')
+			.append(" event=\"").append(event.message).append('"');
+		if(event.hasValue) {
+			line.append(" value=").append(event.value);
+		}
+		if(event.error != null) {
+			line.append(" error=\"").append(event.error).append('"');
+		}
+		sink.println(line);
+		if(event.error != null) {
+			event.error.printStackTrace(sink);
+		}
+	}
+
+	private static Event[] newEvents() {
+		Event[] events = new Event[CAPACITY];
+		for(int i = 0; i < CAPACITY; i++) {
+			events[i] = new Event();
+		}
+		return events;
+	}
+
+	private static Level parseLevel(String name) {
+		try {
+			return Level.valueOf(name.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			return Level.INFO;
+		}
+	}
+}
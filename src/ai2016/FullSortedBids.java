@@ -0,0 +1,128 @@
+package ai2016;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.ObjDoubleConsumer;
+
+import negotiator.Bid;
+
+/**
+ * Sorted bids stored as a list of bid objects. Fastest to read, but every bid
+ * costs a Bid with its own value map.
+ */
+public class FullSortedBids extends SortedBids {
+	private final ArrayList<Bid> bids;
+
+	/**
+	 * Sorts the bids on our utility.
+	 * @param allBids
+	 * 			all bids of the domain
+	 * @param evaluator
+	 * 			our own utility function
+	 */
+	public FullSortedBids(List<Bid> allBids, UtilityEvaluator evaluator) {
+		this(allBids, evaluator, null);
+	}
+
+	/**
+	 * Sorts the bids on our utility, reporting every bid as soon as its
+	 * utility is known.
+	 * @param allBids
+	 * 			all bids of the domain
+	 * @param evaluator
+	 * 			our own utility function
+	 * @param progress
+	 * 			receives every bid with its utility, or null
+	 */
+	public FullSortedBids(List<Bid> allBids, UtilityEvaluator evaluator, ObjDoubleConsumer<Bid> progress) {
+		super(new double[allBids.size()]);
+
+		//compute every utility once
+		int n = allBids.size();
+		double[] unsorted = new double[n];
+		for(int i = 0; i < n; i++) {
+			unsorted[i] = evaluator.getUtility(allBids.get(i));
+			if(progress != null) {
+				progress.accept(allBids.get(i), unsorted[i]);
+			}
+		}
+		bids = new ArrayList<Bid>(n);
+		sort(allBids, unsorted, bids, utilities);
+	}
+
+	/**
+	 * Sorts bids whose utility is already known, such as bids that were
+	 * evaluated while the domain was enumerated.
+	 * @param allBids
+	 * 			all bids of the domain
+	 * @param unsorted
+	 * 			our utility of each bid, in the order of allBids
+	 * @return the sorted bids
+	 */
+	public static FullSortedBids sort(List<Bid> allBids, double[] unsorted) {
+		ArrayList<Bid> bids = new ArrayList<Bid>(allBids.size());
+		double[] utilities = new double[allBids.size()];
+		sort(allBids, unsorted, bids, utilities);
+		return new FullSortedBids(bids, utilities);
+	}
+
+	private static void sort(List<Bid> allBids, final double[] unsorted, ArrayList<Bid> bids, double[] utilities) {
+		int n = allBids.size();
+		ArrayList<Integer> order = new ArrayList<Integer>(n);
+		for(int i = 0; i < n; i++) {
+			order.add(i);
+		}
+		Collections.sort(order, (x, y) -> Double.compare(unsorted[x], unsorted[y]));
+		for(int i = 0; i < n; i++) {
+			bids.add(allBids.get(order.get(i)));
+			utilities[i] = unsorted[order.get(i)];
+		}
+	}
+
+	/**
+	 * Wraps bids that are already sorted.
+	 * @param bids
+	 * 			the bids, sorted ascending on utility
+	 * @param utilities
+	 * 			our utility of each bid
+	 */
+	FullSortedBids(ArrayList<Bid> bids, double[] utilities) {
+		super(utilities);
+		this.bids = bids;
+	}
+
+	/**
+	 * Estimates the footprint of this representation before building it.
+	 * @param count
+	 * 			number of bids
+	 * @param issues
+	 * 			number of issues
+	 * @return the number of bytes
+	 */
+	public static long estimateFootprint(long count, int issues) {
+		//bid and map headers, one map entry per issue, the list slot and the utility
+		long perBid = 96 + 48L * issues + 8 + 8;
+		return count > Long.MAX_VALUE / perBid ? Long.MAX_VALUE : count * perBid;
+	}
+
+	@Override
+	public Bid getBid(int index) {
+		return bids.get(index);
+	}
+
+	@Override
+	public List<Bid> getBids() {
+		return bids;
+	}
+
+	@Override
+	public long getFootprint() {
+		return estimateFootprint(size(), size() == 0 ? 0 : bids.get(0).getIssues().size());
+	}
+
+	@Override
+	public String toString() {
+		return "full bid list";
+	}
+}
@@ -1,16 +1,40 @@
 package ai2016;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.ObjDoubleConsumer;
+import java.util.zip.CRC32;
 
+import ai2016.EventLog.Level;
 import negotiator.AgentID;
 import negotiator.Bid;
 import negotiator.Deadline;
+import negotiator.Domain;
 import negotiator.actions.Accept;
 import negotiator.actions.Action;
+import negotiator.actions.GiveFeedback;
 import negotiator.actions.Offer;
+import negotiator.actions.OfferForFeedback;
+import negotiator.actions.OfferForVoting;
+import negotiator.actions.Reject;
+import negotiator.actions.VoteForOfferAcceptance;
 import negotiator.issue.Issue;
 import negotiator.issue.IssueDiscrete;
 import negotiator.issue.Value;
@@ -29,6 +53,48 @@ public class Group7 extends AbstractNegotiationParty {
 	private final double phase_two_minimum_util = 0.82;
 	private final double turning_point = 0.1;
 	
+	//constants for the outcome space
+	//memory budget for the outcome space in MB, set with -Dai2016.memory.budget
+	private final long memory_budget = Long.getLong("ai2016.memory.budget", 64) * 1024 * 1024;
+	private final int max_band_bids = 20000;
+	private final int max_scanned_bids = 50000;
+	private final int optimizer_node_budget = 200000;
+	//size of the partial index that answers while the outcome space is built
+	private final int partial_buckets = 100;
+	private final int partial_bucket_size = 64;
+	//number of random bids drawn for the index when the outcome space can neither be built nor searched
+	private final int sampled_bids = 100000;
+	//difference in score within which phase 2 rotates among bids we did not offer yet, 0 to only break ties
+	private final double rotation_tolerance = 0.01;
+	
+	//number of time buckets of the acceptance threshold table for mediator proposals
+	private final int threshold_buckets = 1000;
+	
+	//constants for scheduling the opponent model updates
+	//share of the time between our turns for the updates, drift per bid at which the model is converged
+	private final double update_budget_share = 0.1;
+	private final double freeze_drift = 1e-4;
+	private final int min_updates = 50;
+	private final int probe_interval = 10;
+	private final int update_batch_size = 8;
+	private final double update_batch_gain = 4.0;
+	//deferred bids are applied at the latest at our second turn after them
+	private final int max_deferral_turns = 2;
+	
+	//constants for checkpoints of the agent state, enabled with -Dai2016.checkpoint=file
+	//the state is written every few turns and only resumed by the same session, the sorted outcome space
+	//once to file.index, which serves every session with the same preferences
+	private final String checkpoint_file = System.getProperty("ai2016.checkpoint");
+	private final int checkpoint_interval = 10;
+	private final int checkpoint_magic = 0x47374350;
+	private final int checkpoint_version = 2;
+	
+	//constants for the opponent priors of earlier sessions, enabled with -Dai2016.priors=dir
+	//share of the stored weights in the prior, and the number of bids the stored frequencies count as
+	private final String priors_dir = System.getProperty("ai2016.priors");
+	private final double prior_decay = 0.5;
+	private final double prior_bids = 20;
+	
 	//constants for acceptance strategy
 	private final double alpha = 1.02;
 	private final double beta = 0.02;
@@ -39,19 +105,73 @@ public class Group7 extends AbstractNegotiationParty {
 	private TimeLineInfo timeline;
 	private long randomSeed;
 	private AgentID agentId;
+	//Our utility function compiled into lookup tables, which serves every own utility
+	private UtilityEvaluator ownUtility;
+	//Codes of the bids of the domain, null if an issue is not discrete, and the fingerprint of
+	//our preferences for the checkpoints
+	private OutcomeEncoder encoder;
+	private long fingerprint;
+	//whether checkpoints are written, which needs the codes of the bids
+	private boolean checkpointing;
+	//identity of this session, so that a later session does not resume the state of this one
+	private long session;
+	private int turns = 0;
+	//What was learned about the opponents in earlier sessions in this domain, null if disabled
+	private OpponentPriors priors;
+	//Type of each agent that made a bid, under which its model is stored at the end
+	private HashMap<Integer, String> agentTypes = new HashMap<Integer, String>();
+	
+	//All randomness of the agent, derived from the session seed
+	private Random random;
+	//In deterministic mode (-Dai2016.deterministic=true) the opponent model is updated synchronously,
+	//so the decisions only depend on the seed and the received bids, and a steady turn only allocates
+	//the returned action; the default mode allocates per received bid and per snapshot (see AllocationCheck)
+	private final boolean deterministic = Boolean.getBoolean("ai2016.deterministic");
 	
 	//List of all possible bids
 	private ArrayList<Bid> bidsList = new ArrayList<Bid>();
+	//All possible bids sorted on utility, null if the domain is too large to enumerate
+	private SortedBids sortedBids;
+	//Search structure for bids in a utility range
+	private BidSpace bidSpace;
+	//Builds the sorted bids in the background, null when there is nothing to install
+	private FutureTask<SortedBids> pendingBids;
+	//Finds the best bid for the opponents without a scan, null if the utility space is not additive
+	private JointBidOptimizer jointOptimizer;
+	//Whether the bids in range are scanned instead of optimized, and the result of the last scan
+	private boolean scanning = false;
+	private final OpponentModel.Selection selection = new OpponentModel.Selection();
+	//Estimates of the scanned bids per opponent, so only opponents whose model changed are rescored
+	private ScoreColumns scoreColumns;
 	
 	//Information about previous bids
 	private Bid lastReceivedBid = null;
-	private HashMap<Integer, ArrayList<Bid>> bidHistory = new HashMap<>();
+	private double lastReceivedUtility = 0.0;
+	//All bids received from the opponents, with the best one by our own utility
+	private ReceivedBids receivedBids;
+	//All bids we offered, one bit per outcome, so that phase 2 does not repeat itself
+	private OutcomeSet offeredBids;
+	//Last bid of each agent, in the order in which the agents were first seen
+	private int[] bidderHashes = new int[4];
+	private Bid[] lastBids = new Bid[4];
+	private int bidders = 0;
+	//Offers of the current round of the voting protocols
+	private VotingRound votingRound = new VotingRound();
+	//Answers the proposals of a mediator, used once a mediator protocol is detected
+	private MediatorResponder mediator;
+	private boolean mediated = false;
 	
-	//Opponent model
-	private OpponentModel opponentModel;
+	//Opponent model, updated in the background
+	private OpponentModelPipeline opponentModel;
 	
 	//boolean for phase 2 of the bidding strategy to decide between SUM of MAXMIN bid
 	private boolean minAndMax = false;
+	
+	//Computes the bid of the next turn while the opponents are moving
+	private SpeculativeBidder speculativeBidder;
+	//time of our previous turn and the estimated time between two of our turns
+	private double lastTurnTime = -1;
+	private double turnInterval = 0;
 
 	/**
 	 * Initializes the agent.
@@ -71,18 +191,47 @@ public class Group7 extends AbstractNegotiationParty {
 		this.timeline = tl;
 		this.randomSeed = randomSeed;
 		this.agentId = agentId;		
+		this.random = new Random(randomSeed);
+		this.ownUtility = new UtilityEvaluator(utilSpace);
+		EventLog.log(Level.INFO, "Group7", "own utility: " + ownUtility);
+		//domains with issues that are not discrete have no codes and fall back to a sample of their bids
+		this.encoder = OutcomeEncoder.isDiscrete(utilSpace.getDomain()) ? new OutcomeEncoder(utilSpace.getDomain()) : null;
+		this.checkpointing = checkpoint_file != null && encoder != null;
+		if(checkpoint_file != null && encoder == null) {
+			EventLog.log(Level.WARN, "Group7", "checkpoints need a domain with discrete issues only, disabled");
+		}
+		this.fingerprint = checkpointing ? ownUtility.getFingerprint() : 0;
+		this.session = sessionOf(agentId, dl, randomSeed);
 		
-		//Compute all possible bids
-		computeAllBids();
+		//Index the received bids by their outcome code, before the bidders that use them are created
+		receivedBids = new ReceivedBids(encoder);
+		offeredBids = new OutcomeSet(encoder);
+		selection.offered = offeredBids;
 		
-		//Initialize Opponent model
-		opponentModel = new OpponentModel(utilSpace);
+		//Start computing all possible bids, or prepare a search if there are too many
+		initBidSpace();
+		
+		//Precompute the acceptance thresholds for mediator proposals
+		mediator = new MediatorResponder(this::getAcceptanceThreshold, threshold_buckets);
+		
+		//Initialize Opponent model, or resume the model and bid history of a checkpoint
+		OpponentModel model = checkpointing ? restoreState() : null;
+		if(model == null) {
+			model = new OpponentModel(utilSpace);
+		}
+		//the scheduler depends on timing, so it is left out in deterministic mode
+		UpdateScheduler scheduler = deterministic ? null : new UpdateScheduler(update_budget_share, freeze_drift,
+				min_updates, probe_interval, update_batch_size, update_batch_gain, max_deferral_turns);
+		opponentModel = new OpponentModelPipeline(model, !deterministic, scheduler);
+		//the priors are tables over the values of discrete issues
+		if(priors_dir != null && encoder != null) {
+			priors = OpponentPriors.open(new File(priors_dir), utilSpace.getDomain());
+			EventLog.log(Level.INFO, "Group7", "opponent priors", priors.size());
+		}
 
 		super.init(utilSpace, dl, tl, randomSeed, agentId);
-		System.out.println("Discount Factor is "
-				+ utilSpace.getDiscountFactor());
-		System.out.println("Reservation Value is "
-				+ utilSpace.getReservationValueUndiscounted());
+		EventLog.log(Level.INFO, "Group7", "Discount Factor", utilSpace.getDiscountFactor());
+		EventLog.log(Level.INFO, "Group7", "Reservation Value", utilSpace.getReservationValueUndiscounted());
 	}
 	
 
@@ -96,7 +245,53 @@ public class Group7 extends AbstractNegotiationParty {
 	 * @return The chosen action.
 	 */
 	@Override
-	public Action chooseAction(List<Class<? extends Action>> validActions) {			
+	public Action chooseAction(List<Class<? extends Action>> validActions) {
+		//switch to the full outcome space as soon as it is built
+		if(pendingBids != null && pendingBids.isDone()) {
+			installSortedBids();
+		}
+		opponentModel.startTurn();
+		
+		//a mediator only asks for answers to its proposals
+		if(validActions.contains(VoteForOfferAcceptance.class) || validActions.contains(GiveFeedback.class)) {
+			return determineMediatorResponse(validActions);
+		}
+		
+		Action action;
+		if(validActions.contains(OfferForVoting.class)) {
+			//the offer of a round of the voting protocols
+			Bid bid = determineOffer();
+			votingRound.addOwnOffer(bid);
+			action = new OfferForVoting(getPartyId(), bid);
+		} else if(validActions.contains(Reject.class) && !validActions.contains(Offer.class)) {
+			//a vote on one of the offers of the round
+			action = determineVote();
+		} else {
+			action = determineAction(validActions);
+		}
+
+		//Remember our offer, before the bid of the next turn is computed
+		if(action instanceof Offer) {
+			offeredBids.add(((Offer) action).getBid());
+		} else if(action instanceof OfferForVoting) {
+			offeredBids.add(((OfferForVoting) action).getBid());
+		}
+		
+		//Use the time until our next turn to compute our next bid
+		speculateNextTurn();
+		if(checkpointing && ++turns % checkpoint_interval == 0) {
+			saveState();
+		}
+		return action;
+	}
+	
+	/**
+	 * Determines the action of this turn.
+	 * @param validActions
+	 *            Either a list containing both accept and offer or only offer.
+	 * @return The chosen action.
+	 */
+	private Action determineAction(List<Class<? extends Action>> validActions) {
 		//If there is no previous bid, make a random offer
 		if(lastReceivedBid == null) {
 			Bid randomBid = getRandomBid(phase_one_util);
@@ -105,68 +300,226 @@ public class Group7 extends AbstractNegotiationParty {
 		
 		//compute the current point in time as fraction of the total time
 		double current = timeline.getCurrentTime() / timeline.getTotalTime();
-		
+
 		//PHASE 1
 		//if we are before the turning point
 		if(current <= turning_point) {
 			//Option 1: Accept the offer according to the ACnext acceptance strategy with alpha and beta
-			if (lastReceivedBid != null && ((alpha * getUtility(lastReceivedBid)) + beta) >= phase_one_util) {
+			if (isAcceptable(lastReceivedUtility, current, phase_one_util)) {
 				return new Accept(getPartyId(), lastReceivedBid);
-			} 
+			}
 			//Option 2: Make a random offer which an utility value of at 'phase_one_util'
 			else {
-				Bid randomBid = getRandomBid(phase_one_util);				
+				Bid randomBid = getRandomBid(phase_one_util);
 				return new Offer(getPartyId(), randomBid);
 			}
-		} 
+		}
 		//PHASE 2
 		//if we are after the turning point
 		else {
-			//compute the concession the agent will make based on the current point in time
-			double helling = (phase_one_util - phase_two_minimum_util) / (1 - turning_point);
-			double concession = (current - turning_point) * helling;
-			
-			//compute all feasible bids based on the concession
-			double lower = phase_one_util - concession;
-			double upper = phase_one_util;
-			ArrayList<Bid> feasibleBids = getBidsBetween(lower, upper);
-			
-			//select the next bid based on one of two criteria between which the agent alternates
-			Bid nextBid = null;		
-			if (minAndMax == false) {
-				//criteria: select the bid that has the highest minimum utility value of all opponents
-		    	nextBid = opponentModel.formNiceBid(feasibleBids, BidStrategy.MIN);
-		    	minAndMax = true;
-		    } else {
-		    	//criteria: select the bid that has the highest sum of utility values for all opponents
-		    	nextBid = opponentModel.formNiceBid(feasibleBids, BidStrategy.SUM);
-		    	minAndMax = false;
-		    }
-		    
+			//compute the lower bound of the feasible bids based on the concession
+			double lower = getLowerBound(current);
+			Bid nextBid = selectBid(lower);
+
 			//if no bid is formed, do a random bid
 			if(nextBid == null) {
-				return new Offer(getPartyId(), getRandomBid(phase_one_util - concession));
+				return new Offer(getPartyId(), getRandomBid(lower));
 			}
 
-			//Option 1: Accept if the last bid is higher than the lower bound
-			if(getUtility(lastReceivedBid) >= lower) {
-				return new Accept(getPartyId(), lastReceivedBid);
-			} 
-			//Option 2: Accept the offer according to the ACnext acceptance strategy with alpha and beta
-			else if(((alpha * getUtility(lastReceivedBid)) + beta) >= getUtility(nextBid)) {
-				return new Accept(getPartyId(), lastReceivedBid);
-			} 
-			//Option 3: Accept if deadline is almost reached and the bid is 'good enough'
-			else if(current >= 0.99 && getUtility(lastReceivedBid) >= 0.7) {
+			//Option 1-3: Accept if the last bid is good enough
+			double nextUtility = getUtility(nextBid);
+			if(isAcceptable(lastReceivedUtility, current, nextUtility)) {
 				return new Accept(getPartyId(), lastReceivedBid);
-			} 
-			//Option 4: Make the offer computed above
+			}
+			//Option 4: If deadline is almost reached, offer the best bid received so far if it beats our own
+			else if(current >= 0.99 && receivedBids.getBestUtility() > nextUtility) {
+				return new Offer(getPartyId(), receivedBids.getBest());
+			}
+			//Option 5: Make the offer computed above
 			else {
 				return new Offer(getPartyId(), nextBid);
 			}
 		}
 	}
 
+	/**
+	 * Selects the bid to offer in phase 2. Among the bids whose score is
+	 * within rotation_tolerance of the best, one we did not offer yet is preferred.
+	 * @param lower
+	 * 			lower bound of the feasible bids
+	 * @return the bid, or null if no bid is formed
+	 */
+	private Bid selectBid(double lower) {
+		double upper = phase_one_util;
+
+		//select the next bid based on one of two criteria between which the agent alternates
+		//criteria MIN: select the bid that has the highest minimum utility value of all opponents
+		//criteria SUM: select the bid that has the highest sum of utility values for all opponents
+		//the bid may already have been computed during the moves of the opponents
+		BidStrategy strategy = minAndMax ? BidStrategy.SUM : BidStrategy.MIN;
+		Bid nextBid;
+		if(speculativeBidder != null) {
+			nextBid = speculativeBidder.take(opponentModel.getSnapshot(), lower, upper, strategy);
+		} else if(scanning) {
+			OpponentModel model = opponentModel.getSnapshot().model;
+			int from = sortedBids.indexOf(lower);
+			int to = sortedBids.indexAbove(upper);
+			if(scoreColumns != null) {
+				scoreColumns.select(model, from, to, strategy, selection);
+			} else {
+				model.select(sortedBids.getBids(), from, to, strategy, selection);
+			}
+			int index = selection.getRotatedIndex(rotation_tolerance);
+			nextBid = index >= 0 ? sortedBids.getBid(index) : null;
+		} else {
+			nextBid = jointOptimizer != null ? jointOptimizer.optimize(opponentModel.getSnapshot().model, strategy, lower, upper) : null;
+			//without an optimizer, or when it ran out of nodes, scan the feasible bids
+			if(nextBid == null) {
+				nextBid = opponentModel.getSnapshot().model.formNiceBid(getBidsBetween(lower, upper), strategy, offeredBids, rotation_tolerance);
+			}
+		}
+		minAndMax = !minAndMax;
+		return nextBid;
+	}
+
+	/**
+	 * Decides whether to accept a bid.
+	 * @param utility
+	 * 			our utility of the bid
+	 * @param current
+	 * 			point in time as fraction of the total time
+	 * @param nextUtility
+	 * 			our utility of the bid we would offer next
+	 * @return true if the bid is acceptable
+	 */
+	private boolean isAcceptable(double utility, double current, double nextUtility) {
+		//ACnext with alpha and beta
+		if((alpha * utility) + beta >= nextUtility) {
+			return true;
+		}
+		if(current <= turning_point) {
+			return false;
+		}
+		//in phase 2, accept if the bid is higher than the lower bound
+		//or if deadline is almost reached and the bid is 'good enough'
+		return utility >= getLowerBound(current) || (current >= 0.99 && utility >= 0.7);
+	}
+
+	/**
+	 * Returns the lowest utility that is acceptable at a point in time, when
+	 * there is no bid of our own to compare with. This is isAcceptable with
+	 * 'phase_one_util' as the next bid.
+	 * @param time
+	 * 			point in time as fraction of the total time
+	 * @return the threshold
+	 */
+	private double getAcceptanceThreshold(double time) {
+		double threshold = (phase_one_util - beta) / alpha;
+		if(time > turning_point) {
+			threshold = Math.min(threshold, getLowerBound(time));
+			if(time >= 0.99) {
+				threshold = Math.min(threshold, 0.7);
+			}
+		}
+		return threshold;
+	}
+
+	/**
+	 * Answers the current proposal of the mediator, a vote in
+	 * SimpleMediatorBasedProtocol and feedback in MediatorFeedbackBasedProtocol.
+	 * @param validActions
+	 * 			the actions asked for by the mediator
+	 * @return the answer
+	 */
+	private Action determineMediatorResponse(List<Class<? extends Action>> validActions) {
+		if(!mediated) {
+			enterMediatorMode();
+		}
+		if(validActions.contains(GiveFeedback.class)) {
+			return new GiveFeedback(getPartyId(), mediator.getFeedback());
+		}
+		double current = timeline.getCurrentTime() / timeline.getTotalTime();
+		if(mediator.accepts(current)) {
+			return new VoteForOfferAcceptance(getPartyId(), mediator.getProposal());
+		}
+		return new Reject(getPartyId(), mediator.getProposal());
+	}
+
+	/**
+	 * Switches to the mediator protocols. A proposal that arrived before was
+	 * buffered as an offer of a voting round and is handed to the mediator
+	 * responder instead, without ever reaching the opponent model.
+	 */
+	private void enterMediatorMode() {
+		mediated = true;
+		Bid proposal = votingRound.getLastReceivedOffer();
+		votingRound = new VotingRound();
+		if(proposal != null && mediator.getProposal() == null) {
+			mediator.propose(proposal, getUtility(proposal));
+		}
+	}
+
+	/**
+	 * Determines the offer of a round of the voting protocols, the same bid
+	 * that would be offered in the alternating offers protocol.
+	 * @return the bid
+	 */
+	private Bid determineOffer() {
+		double current = timeline.getCurrentTime() / timeline.getTotalTime();
+		if(lastReceivedBid == null || current <= turning_point) {
+			return getRandomBid(phase_one_util);
+		}
+		double lower = getLowerBound(current);
+		Bid nextBid = selectBid(lower);
+		return nextBid == null ? getRandomBid(lower) : nextBid;
+	}
+
+	/**
+	 * Determines the vote on the next offer of the round. On the first vote
+	 * all offers of the round are scored at once: a vote shows they are offers
+	 * of opponents, so only now they are recorded and go to the opponent model
+	 * as one batch, and our own offer of the round serves as the next bid of
+	 * ACnext for all of them.
+	 * @return an Accept or Reject of the offer
+	 */
+	private Action determineVote() {
+		if(!votingRound.isEvaluated()) {
+			List<AgentID> senders = votingRound.getSenders();
+			ArrayList<OpponentModel.Observation> observations = new ArrayList<OpponentModel.Observation>();
+			for(int i = 0; i < senders.size(); i++) {
+				if(senders.get(i) != null) {
+					Bid bid = votingRound.getOffers().get(i);
+					Bid previousBid = recordBid(senders.get(i), bid);
+					observations.add(new OpponentModel.Observation(senders.get(i).hashCode(), bid, previousBid));
+				}
+			}
+			opponentModel.submitAll(observations);
+
+			double current = timeline.getCurrentTime() / timeline.getTotalTime();
+			Bid ownOffer = votingRound.getOwnOffer();
+			double nextUtility = ownOffer == null ? phase_one_util : getUtility(ownOffer);
+			List<Bid> offers = votingRound.getOffers();
+			boolean[] votes = new boolean[offers.size()];
+			for(int i = 0; i < votes.length; i++) {
+				votes[i] = isAcceptable(getUtility(offers.get(i)), current, nextUtility);
+			}
+			votingRound.setVotes(votes);
+		}
+
+		//more votes than offers means we missed an offer, so keep to our own
+		//and reject the latest offer of the round, which is the closest we know to the one voted on
+		if(!votingRound.hasNextVote()) {
+			List<Bid> offers = votingRound.getOffers();
+			Bid offer = offers.isEmpty() ? getRandomBid(phase_one_util) : offers.get(offers.size() - 1);
+			return new Reject(getPartyId(), offer);
+		}
+		Bid offer = votingRound.getNextOffer();
+		if(votingRound.takeNextVote()) {
+			return new Accept(getPartyId(), offer);
+		}
+		return new Reject(getPartyId(), offer);
+	}
+
 	/**
 	 * All offers proposed by the other parties will be received as a message.
 	 * You can use this information to your advantage, for example to predict
@@ -180,20 +533,140 @@ public class Group7 extends AbstractNegotiationParty {
 	@Override
 	public void receiveMessage(AgentID sender, Action action) {
 		super.receiveMessage(sender, action);
-		if (action instanceof Offer) {
-			//Save as the last received bid
+		if (action instanceof OfferForFeedback && !mediated) {
+			enterMediatorMode();
+		}
+		if (mediated && (action instanceof OfferForVoting || action instanceof OfferForFeedback)) {
+			//Proposals of the mediator are not bids of an opponent
+			Bid proposal = action instanceof OfferForVoting ? ((OfferForVoting) action).getBid() : ((OfferForFeedback) action).getBid();
+			mediator.propose(proposal, getUtility(proposal));
+		} else if (action instanceof OfferForVoting) {
+			//Buffered until the votes, as it may still turn out to be a proposal of a mediator
+			votingRound.addOffer(sender, ((OfferForVoting) action).getBid());
+		} else if (action instanceof Offer) {
 			Bid receivedBid = ((Offer) action).getBid();
-			lastReceivedBid = receivedBid;
-			
-			//Save bid in list of all bids for future reference
-			if(!bidHistory.containsKey(sender.hashCode())) {
-				bidHistory.put(sender.hashCode(), new ArrayList<Bid>());
+			Bid previousBid = recordBid(sender, receivedBid);
+			opponentModel.submit(sender.hashCode(), receivedBid, previousBid);
+		}
+	}
+	
+	/**
+	 * Records a bid of an opponent, except in the opponent model itself.
+	 * @param sender
+	 * 			the opponent
+	 * @param receivedBid
+	 * 			the bid
+	 * @return the previous bid of the opponent, or null
+	 */
+	private Bid recordBid(AgentID sender, Bid receivedBid) {
+		//Save as the last received bid
+		lastReceivedBid = receivedBid;
+		lastReceivedUtility = getUtility(receivedBid);
+		receivedBids.add(receivedBid, lastReceivedUtility);
+		
+		//Save bid as the last bid of this agent
+		Bid previousBid = replaceLastBid(sender.hashCode(), receivedBid);
+		
+		//Start the model of a new opponent from what was learned about its type before
+		if(previousBid == null && priors != null) {
+			String type = OpponentPriors.typeOf(sender);
+			agentTypes.put(sender.hashCode(), type);
+			OpponentPriors.Prior prior = priors.get(type, prior_decay, prior_bids);
+			if(prior != null) {
+				opponentModel.setPrior(sender.hashCode(), prior);
 			}
-			bidHistory.get(sender.hashCode()).add(receivedBid);
-			
-			//Update opponent model
-			ArrayList<Bid> agentsBids = bidHistory.get(sender.hashCode());
-			opponentModel.update(sender.hashCode(), agentsBids);
+		}
+		return previousBid;
+	}
+	
+	/**
+	 * Stores the opponent models of this session as priors for later sessions,
+	 * removes the checkpoint of this session and stops the background threads.
+	 * @param acceptedBid
+	 *            The bid that was agreed on, or null.
+	 * @return the result of the super class
+	 */
+	@Override
+	public Map<String, String> negotiationEnded(Bid acceptedBid) {
+		if(priors != null) {
+			OpponentModel model = opponentModel.getSnapshot().model;
+			for(int a = 0; a < model.getAgentCount(); a++) {
+				String type = agentTypes.get(model.getAgentHash(a));
+				if(type != null) {
+					priors.put(type, model.toPrior(a));
+				}
+			}
+			priors.save();
+		}
+		if(checkpointing) {
+			deleteCheckpoint();
+		}
+		//stop the background updates, which would keep the model of this session alive
+		if(opponentModel != null) {
+			opponentModel.shutdown();
+		}
+		//and the speculation thread, which would keep the sorted outcome space alive
+		if(speculativeBidder != null) {
+			speculativeBidder.shutdown();
+		}
+		return super.negotiationEnded(acceptedBid);
+	}
+	
+	/**
+	 * Stores the new bid of an agent.
+	 * @param agentHash
+	 * 			hash of the agent
+	 * @param bid
+	 * 			the new bid
+	 * @return the previous bid of the agent, or null
+	 */
+	private Bid replaceLastBid(int agentHash, Bid bid) {
+		for(int i = 0; i < bidders; i++) {
+			if(bidderHashes[i] == agentHash) {
+				Bid previousBid = lastBids[i];
+				lastBids[i] = bid;
+				return previousBid;
+			}
+		}
+		if(bidders == bidderHashes.length) {
+			bidderHashes = Arrays.copyOf(bidderHashes, bidders * 2);
+			lastBids = Arrays.copyOf(lastBids, bidders * 2);
+		}
+		bidderHashes[bidders] = agentHash;
+		lastBids[bidders] = bid;
+		bidders++;
+		return null;
+	}
+	
+	/**
+	 * Computes the lower bound of the feasible bids in phase 2, based on the
+	 * concession the agent makes at the given point in time.
+	 * @param time
+	 * 			point in time as fraction of the total time
+	 * @return the lower bound
+	 */
+	private double getLowerBound(double time) {
+		double helling = (phase_one_util - phase_two_minimum_util) / (1 - turning_point);
+		double concession = (time - turning_point) * helling;
+		return phase_one_util - concession;
+	}
+	
+	/**
+	 * Starts computing the phase 2 bid of our next turn in the background,
+	 * based on the projected time of that turn.
+	 */
+	private void speculateNextTurn() {
+		//estimate the time between two of our turns
+		double current = timeline.getCurrentTime() / timeline.getTotalTime();
+		if(lastTurnTime >= 0) {
+			turnInterval = current - lastTurnTime;
+		}
+		lastTurnTime = current;
+		
+		double projected = Math.min(1.0, current + turnInterval);
+		if(projected > turning_point && lastReceivedBid != null && speculativeBidder != null) {
+			BidStrategy strategy = minAndMax ? BidStrategy.SUM : BidStrategy.MIN;
+			speculativeBidder.speculate(opponentModel.getSnapshot(), getLowerBound(projected), phase_one_util, strategy);
 		}
 	}
 
@@ -202,6 +675,18 @@ public class Group7 extends AbstractNegotiationParty {
 		return "Group 7";
 	}
 
+	/**
+	 * Computes our undiscounted utility of a bid with the compiled utility
+	 * function, which gives the same utility as the utility space.
+	 * @param bid
+	 * 			the bid
+	 * @return the utility, 0 if it can not be computed
+	 */
+	@Override
+	public double getUtility(Bid bid) {
+		return ownUtility.getUtility(bid);
+	}
+
 	/**
 	 * Generates a random bid with an utility value between parameter target and 1.0.
 	 * @param target 
@@ -209,22 +694,18 @@ public class Group7 extends AbstractNegotiationParty {
 	 * @return The chosen bid
 	 */
 	private Bid getRandomBid(double target) {
-		//get all possible bids in this range
-		ArrayList<Bid> candidates = getBidsBetween(target, 1.0);
+		//choose a random bid in this range
+		Bid candidate = bidSpace.getRandomBid(target, 1.0, random);
 		
 		//If no bids are found, choose the maximum bid
-		if(candidates.size() == 0) {
+		if(candidate == null) {
 			try {
 				return utilSpace.getMaxUtilityBid();
 			} catch (Exception e) {
-				e.printStackTrace();
+				EventLog.log(Level.ERROR, "Group7", "no maximum utility bid", e);
 			}
 		}
-		
-		//If bids are found, choose one randomly
-		Random rand = new Random();
-	    int random = rand.nextInt(candidates.size());
-	    return candidates.get(random);
+	    return candidate;
 	}
 
 	/**
@@ -236,23 +717,356 @@ public class Group7 extends AbstractNegotiationParty {
 	 * @return the list of bids in this range
 	 */
 	private ArrayList<Bid> getBidsBetween(double lower, double upper) {
-		ArrayList<Bid> result = new ArrayList<Bid>();
-		
 		//Select all bids with an utility value between lower and upper
-		for(Bid b : bidsList) {
-			if(lower <= getUtility(b) && getUtility(b) <= upper) {
-				result.add(b);
+		return bidSpace.getBidsBetween(lower, upper);
+	}
+	
+	/**
+	 * Sets up the search for bids, picking the representation of the outcome
+	 * space that fits in the memory budget: a list of all bids, the bids
+	 * encoded as numbers, or (for additive domains) no enumeration at all.
+	 * Domains that can not be enumerated, or exceed the budget without being
+	 * additive, get an index of random bids. Small domains are scanned for the
+	 * best bid for the opponents, larger additive domains use the joint optimizer.
+	 */
+	private void initBidSpace() {
+		long count = countAllBids();
+		int issues = utilSpace.getDomain().getIssues().size();
+		//only utility spaces that are additive over discrete issues can be compiled
+		boolean additive = ownUtility.isCompiled();
+		if(additive) {
+			jointOptimizer = new JointBidOptimizer(ownUtility, optimizer_node_budget);
+		}
+		
+		//only domains with discrete issues can be enumerated
+		boolean full = encoder != null && FullSortedBids.estimateFootprint(count, issues) <= memory_budget;
+		if(full || encoder != null && EncodedSortedBids.estimateFootprint(count) <= memory_budget) {
+			buildSortedBids(full);
+		} else if(additive) {
+			bidSpace = new UtilityBandSearch(ownUtility, max_band_bids);
+			EventLog.log(Level.INFO, "Group7", "outcome space: " + bidSpace + ", bytes", bidSpace.getFootprint());
+		} else {
+			EventLog.log(Level.WARN, "Group7", encoder == null
+					? "outcome space can not be enumerated, sampling random bids"
+					: "outcome space exceeds the memory budget and is not additive, sampling random bids", sampled_bids);
+			sampleBidSpace();
+		}
+		EventLog.log(Level.INFO, "Group7", "outcomes", count);
+	}
+	
+	/**
+	 * Starts building the sorted bids on a background thread, so that init
+	 * returns right away. Until they are installed, bids come from a partial
+	 * index of the bids evaluated so far, or else the bid with maximum utility.
+	 * @param full
+	 * 			whether to store the bids as a list of bids, or else as codes
+	 */
+	private void buildSortedBids(final boolean full) {
+		//a checkpoint holds the sorted order, which saves the sort
+		final SortedBids restored = checkpointing ? restoreIndex(full) : null;
+		if(restored != null) {
+			pendingBids = new FutureTask<SortedBids>(() -> restored);
+			pendingBids.run();
+			installSortedBids();
+			return;
+		}
+		
+		final PartialBidIndex partial = new PartialBidIndex(partial_buckets, partial_bucket_size);
+		bidSpace = partial;
+		pendingBids = new FutureTask<SortedBids>(() -> {
+			SortedBids bids;
+			if(full) {
+				//the partial index fills while the domain is enumerated
+				double[] utilities = computeAllBids(partial::add);
+				bids = FullSortedBids.sort(bidsList, utilities);
+				//the sorted list holds the bids now
+				bidsList = new ArrayList<Bid>();
+			} else {
+				bids = new EncodedSortedBids(encoder, ownUtility, (code, utility) -> partial.add(code, utility, encoder));
+			}
+			if(checkpointing) {
+				saveIndex(bids);
 			}
+			return bids;
+		});
+		
+		if(deterministic) {
+			//the decisions may not depend on how far the construction got
+			pendingBids.run();
+			installSortedBids();
+		} else {
+			Thread builder = new Thread(pendingBids, "Group7-outcome-space");
+			builder.setDaemon(true);
+			builder.start();
+		}
+	}
+	
+	/**
+	 * Fills a partial index with random bids, on a background thread unless
+	 * in deterministic mode. The index is the outcome space for the whole session.
+	 */
+	private void sampleBidSpace() {
+		final PartialBidIndex sample = new PartialBidIndex(partial_buckets, partial_bucket_size);
+		bidSpace = sample;
+		//a random of its own, so the sampling does not depend on the decisions or the other way around
+		final Random sampler = new Random(randomSeed);
+		Runnable task = () -> {
+			Domain domain = utilSpace.getDomain();
+			for(int i = 0; i < sampled_bids; i++) {
+				Bid bid = domain.getRandomBid(sampler);
+				sample.add(bid, getUtility(bid));
+			}
+			EventLog.log(Level.INFO, "Group7", "outcome space: " + sample + ", bytes", sample.getFootprint());
+		};
+		
+		if(deterministic) {
+			task.run();
+		} else {
+			Thread sampling = new Thread(task, "Group7-outcome-space");
+			sampling.setDaemon(true);
+			sampling.start();
+		}
+	}
+	
+	/**
+	 * Installs the sorted bids once they are built.
+	 */
+	private void installSortedBids() {
+		FutureTask<SortedBids> task = pendingBids;
+		pendingBids = null;
+		try {
+			sortedBids = task.get();
+		} catch (InterruptedException | ExecutionException e) {
+			//keep answering from the partial index
+			EventLog.log(Level.ERROR, "Group7", "outcome space can not be built", e);
+			return;
 		}
 		
-		//Return the resulting list
-		return result;
+		if(sortedBids.size() <= max_scanned_bids || jointOptimizer == null) {
+			scanning = true;
+			//a column of estimates per opponent costs 8 bytes per bid, so only small spaces keep them
+			if(sortedBids.size() <= max_scanned_bids) {
+				scoreColumns = new ScoreColumns(sortedBids.getBids());
+			}
+			//speculation reads copies of the model, which only the asynchronous model publishes
+			if(!deterministic) {
+				speculativeBidder = new SpeculativeBidder(sortedBids, scoreColumns, offeredBids, rotation_tolerance);
+			}
+		}
+		bidSpace = sortedBids;
+		EventLog.log(Level.INFO, "Group7", "outcome space: " + bidSpace + ", bytes", bidSpace.getFootprint());
+	}
+	
+	/**
+	 * Opens a checkpoint file and checks that it was written by this version
+	 * of the agent for the same preferences.
+	 * @return the input after the header, or null if the file is missing or does not match
+	 */
+	private DataInputStream openCheckpoint(File file) throws IOException {
+		if(!file.isFile()) {
+			return null;
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		if(in.readInt() != checkpoint_magic || in.readInt() != checkpoint_version || in.readLong() != fingerprint) {
+			EventLog.log(Level.WARN, "Group7", "checkpoint " + file + " does not match, ignored");
+			in.close();
+			return null;
+		}
+		return in;
+	}
+	
+	/**
+	 * Writes a checkpoint file through a temporary file, so that a crash
+	 * while writing leaves the previous checkpoint intact.
+	 */
+	private DataOutputStream createCheckpoint(File temp) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16));
+		out.writeInt(checkpoint_magic);
+		out.writeInt(checkpoint_version);
+		out.writeLong(fingerprint);
+		return out;
+	}
+	
+	/**
+	 * Writes the sorted outcome space to the index checkpoint.
+	 * @param bids
+	 * 			the sorted bids
+	 */
+	private void saveIndex(SortedBids bids) {
+		File file = new File(checkpoint_file + ".index");
+		File temp = new File(checkpoint_file + ".index.tmp");
+		try {
+			try(DataOutputStream out = createCheckpoint(temp)) {
+				bids.write(out, encoder);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			EventLog.log(Level.ERROR, "Group7", "outcome space checkpoint can not be written", e);
+		}
+	}
+	
+	/**
+	 * Reads the sorted outcome space from the index checkpoint.
+	 * @param full
+	 * 			whether to store the bids as a list of bids, or else as codes
+	 * @return the sorted bids, or null if there is no matching checkpoint
+	 */
+	private SortedBids restoreIndex(boolean full) {
+		long start = System.nanoTime();
+		try(DataInputStream in = openCheckpoint(new File(checkpoint_file + ".index"))) {
+			if(in == null) {
+				return null;
+			}
+			SortedBids bids = SortedBids.read(in, encoder, ownUtility, full);
+			EventLog.log(Level.INFO, "Group7", "outcome space restored, ms", (System.nanoTime() - start) / 1e6);
+			return bids;
+		} catch (IOException e) {
+			EventLog.log(Level.ERROR, "Group7", "outcome space checkpoint can not be read", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Writes the state of the negotiation to the checkpoint: the phase 2
+	 * alternation, the turn timing, the received bids and the opponent model
+	 * of the latest snapshot.
+	 */
+	private void saveState() {
+		File file = new File(checkpoint_file);
+		File temp = new File(checkpoint_file + ".tmp");
+		try {
+			try(DataOutputStream out = createCheckpoint(temp)) {
+				out.writeLong(session);
+				out.writeBoolean(minAndMax);
+				out.writeBoolean(mediated);
+				out.writeDouble(lastTurnTime);
+				out.writeDouble(turnInterval);
+				out.writeBoolean(lastReceivedBid != null);
+				if(lastReceivedBid != null) {
+					out.writeLong(encoder.encode(lastReceivedBid));
+					out.writeDouble(lastReceivedUtility);
+				}
+				out.writeInt(bidders);
+				for(int i = 0; i < bidders; i++) {
+					out.writeInt(bidderHashes[i]);
+					out.writeLong(encoder.encode(lastBids[i]));
+				}
+				receivedBids.write(out);
+				opponentModel.getSnapshot().model.write(out);
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			EventLog.log(Level.ERROR, "Group7", "checkpoint can not be written", e);
+		}
+	}
+	
+	/**
+	 * Restores the state of the negotiation from the checkpoint. Nothing is
+	 * changed unless the whole checkpoint can be read.
+	 * @return the restored opponent model, or null if there is no matching checkpoint
+	 */
+	private OpponentModel restoreState() {
+		try(DataInputStream in = openCheckpoint(new File(checkpoint_file))) {
+			if(in == null) {
+				return null;
+			}
+			if(in.readLong() != session) {
+				EventLog.log(Level.WARN, "Group7", "checkpoint of another session, ignored");
+				return null;
+			}
+			boolean restoredMinAndMax = in.readBoolean();
+			boolean restoredMediated = in.readBoolean();
+			double restoredLastTurnTime = in.readDouble();
+			double restoredTurnInterval = in.readDouble();
+			Bid restoredLastBid = null;
+			double restoredLastUtility = 0.0;
+			if(in.readBoolean()) {
+				restoredLastBid = encoder.decode(in.readLong());
+				restoredLastUtility = in.readDouble();
+			}
+			int restoredBidders = in.readInt();
+			int[] restoredHashes = new int[Math.max(4, restoredBidders)];
+			Bid[] restoredBids = new Bid[restoredHashes.length];
+			for(int i = 0; i < restoredBidders; i++) {
+				restoredHashes[i] = in.readInt();
+				restoredBids[i] = encoder.decode(in.readLong());
+			}
+			ReceivedBids restoredReceived = new ReceivedBids(encoder);
+			restoredReceived.read(in);
+			OpponentModel model = new OpponentModel(utilSpace);
+			model.read(in);
+			
+			minAndMax = restoredMinAndMax;
+			lastTurnTime = restoredLastTurnTime;
+			turnInterval = restoredTurnInterval;
+			lastReceivedBid = restoredLastBid;
+			lastReceivedUtility = restoredLastUtility;
+			bidders = restoredBidders;
+			bidderHashes = restoredHashes;
+			lastBids = restoredBids;
+			receivedBids = restoredReceived;
+			if(restoredMediated) {
+				enterMediatorMode();
+			}
+			EventLog.log(Level.INFO, "Group7", "checkpoint restored, agents", model.getAgentCount());
+			return model;
+		} catch (IOException e) {
+			EventLog.log(Level.ERROR, "Group7", "checkpoint can not be read", e);
+			return null;
+		}
+	}
+	
+	/**
+	 * Computes the identity of a session from our agent id, the deadline and the session seed.
+	 * @return a checksum over the three
+	 */
+	private static long sessionOf(AgentID agentId, Deadline dl, long randomSeed) {
+		CRC32 crc = new CRC32();
+		String identity = agentId + "/" + (dl == null ? "" : dl.getType() + ":" + dl.getValue()) + "/" + randomSeed;
+		crc.update(identity.getBytes(StandardCharsets.UTF_8));
+		return crc.getValue();
+	}
+	
+	/**
+	 * Removes the state checkpoint and the temporary checkpoint files at the
+	 * end of the session. The index stays, since it only depends on the preferences.
+	 */
+	private void deleteCheckpoint() {
+		for(String suffix : new String[] { "", ".tmp", ".index.tmp" }) {
+			File file = new File(checkpoint_file + suffix);
+			if(file.exists() && !file.delete()) {
+				EventLog.log(Level.WARN, "Group7", "can not remove " + file);
+			}
+		}
+	}
+	
+	/**
+	 * Counts the number of possible bids without enumerating them.
+	 * @return the product of the number of values of all issues, at most Long.MAX_VALUE
+	 */
+	private long countAllBids() {
+		long count = 1;
+		for(Issue issue : utilSpace.getDomain().getIssues()) {
+			if(issue instanceof IssueDiscrete) {
+				int values = ((IssueDiscrete) issue).getNumberOfValues();
+				if(count > Long.MAX_VALUE / Math.max(1, values)) {
+					return Long.MAX_VALUE;
+				}
+				count *= values;
+			}
+		}
+		return count;
 	}
 
 	/**
 	 * Computes all possible bids and saves them in a list for future reference.
+	 * Every bid is evaluated as soon as it is created.
+	 * @param progress
+	 * 			receives every bid with its utility
+	 * @return our utility of each bid, in the order of the list
 	 */
-	private void computeAllBids() {
+	private double[] computeAllBids(ObjDoubleConsumer<Bid> progress) {
+		double[] utilities = new double[(int) countAllBids()];
 		Issue issue = utilSpace.getDomain().getIssues().get(0);
 		if (issue instanceof IssueDiscrete) {
 		    IssueDiscrete discreteIssue = (IssueDiscrete) issue;
@@ -260,9 +1074,10 @@ public class Group7 extends AbstractNegotiationParty {
 		    
 		    //For each of the values of the first issue, start a depth first search
 		    for(Value value : values) {
-		    	traverseDomain(new HashMap<Integer, Value>(), 1, value);
+		    	traverseDomain(new HashMap<Integer, Value>(), 1, value, utilities, progress);
 		    }
 		}
+		return utilities;
 	}
 
 	/**
@@ -270,8 +1085,11 @@ public class Group7 extends AbstractNegotiationParty {
 	 * @param bidValues
 	 * @param issueNumber
 	 * @param previousValue
+	 * @param utilities
+	 * @param progress
 	 */
-	private void traverseDomain(HashMap<Integer, Value> bidValues, int issueNumber, Value previousValue) {
+	private void traverseDomain(HashMap<Integer, Value> bidValues, int issueNumber, Value previousValue,
+			double[] utilities, ObjDoubleConsumer<Bid> progress) {
 		//add value to bid
 		bidValues.put(issueNumber, previousValue);
 		
@@ -279,7 +1097,10 @@ public class Group7 extends AbstractNegotiationParty {
 		if(issueNumber == utilSpace.getDomain().getIssues().size()) {
 			HashMap<Integer, Value> vals = new HashMap<Integer, Value>();
 			vals.putAll(bidValues);
-			bidsList.add(new Bid(utilSpace.getDomain(), vals));
+			Bid bid = new Bid(utilSpace.getDomain(), vals);
+			utilities[bidsList.size()] = getUtility(bid);
+			bidsList.add(bid);
+			progress.accept(bid, utilities[bidsList.size() - 1]);
 		} 
 		//recursive step
 		else {
@@ -288,7 +1109,7 @@ public class Group7 extends AbstractNegotiationParty {
 	            IssueDiscrete discreteIssue = (IssueDiscrete) issue;
 	            List<ValueDiscrete> values = discreteIssue.getValues();
 	            for(Value value : values) {
-	            	traverseDomain(bidValues, issueNumber + 1, value);
+	            	traverseDomain(bidValues, issueNumber + 1, value, utilities, progress);
 	            }
 	        }
 		}
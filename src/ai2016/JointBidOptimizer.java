@@ -0,0 +1,250 @@
+package ai2016;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import negotiator.Bid;
+import negotiator.Domain;
+import negotiator.issue.Issue;
+import negotiator.issue.IssueDiscrete;
+import negotiator.issue.Value;
+import negotiator.issue.ValueDiscrete;
+
+/**
+ * Finds the bid with the highest SUM or MIN of the estimated opponent
+ * utilities among the bids with an own utility in a given range, without
+ * scanning those bids. Both our utility and the estimates of the opponent
+ * model are sums of per-issue contributions, so a branch and bound search
+ * over the issues can bound the best score reachable from a partial bid.
+ * The tables of the search are reused between optimizations, so a search
+ * only allocates the returned bid.
+ */
+public class JointBidOptimizer {
+	private final Domain domain;
+	private final List<Issue> issues;
+	private final int[] issueNumbers;
+	private final ValueDiscrete[][] values;
+	//our own contribution of each value, and the smallest and largest sums of the remaining issues
+	private final double[][] own;
+	private final double[] ownMinRest, ownMaxRest;
+	//maximum number of search nodes per optimization, after which the best bid so far, if any, is returned
+	private final int nodeBudget;
+
+	//state of the current search, the opponent tables grow with the number of agents
+	private double[][][] opponent = new double[0][][];
+	private double[][] opponentMaxRest = new double[0][];
+	private double[] partial = new double[0];
+	private int agents;
+	private final double[][] sum;
+	private final double[] sumMaxRest;
+	private final int[][] order;
+	private BidStrategy strategy;
+	private double lower, upper;
+	private final int[] choice, bestChoice;
+	private boolean found;
+	private double bestScore;
+	private int nodes;
+
+	/**
+	 * Constructor of this class.
+	 * @param evaluator
+	 * 			our compiled utility function
+	 * @param nodeBudget
+	 * 			maximum number of search nodes per optimization
+	 */
+	public JointBidOptimizer(UtilityEvaluator evaluator, int nodeBudget) {
+		if(!evaluator.isCompiled()) {
+			throw new IllegalArgumentException("Utility space is not additive over discrete issues");
+		}
+		this.domain = evaluator.getDomain();
+		this.issues = domain.getIssues();
+		this.nodeBudget = nodeBudget;
+
+		int n = issues.size();
+		issueNumbers = new int[n];
+		values = new ValueDiscrete[n][];
+		own = new double[n][];
+		ownMinRest = new double[n + 1];
+		ownMaxRest = new double[n + 1];
+		sum = new double[n][];
+		sumMaxRest = new double[n + 1];
+		order = new int[n][];
+		choice = new int[n];
+		bestChoice = new int[n];
+		for(int i = 0; i < n; i++) {
+			IssueDiscrete issue = (IssueDiscrete) issues.get(i);
+			issueNumbers[i] = issue.getNumber();
+			values[i] = issue.getValues().toArray(new ValueDiscrete[0]);
+			own[i] = new double[values[i].length];
+			for(int v = 0; v < values[i].length; v++) {
+				own[i][v] = evaluator.getContribution(i, v);
+			}
+			sum[i] = new double[values[i].length];
+			order[i] = new int[values[i].length];
+		}
+		for(int i = n - 1; i >= 0; i--) {
+			ownMinRest[i] = ownMinRest[i + 1] + min(own[i]);
+			ownMaxRest[i] = ownMaxRest[i + 1] + max(own[i]);
+		}
+	}
+
+	/**
+	 * Finds the best bid for the opponents with an own utility between lower and upper.
+	 * @param model
+	 * 			the opponent model, which must not change during the search
+	 * @param strategy
+	 * 			SUM to maximize the sum, MIN to maximize the minimum of the opponent utilities
+	 * @param lower
+	 * 			lower bound of our own utility
+	 * @param upper
+	 * 			upper bound of our own utility
+	 * @return the best bid, or null if no bid has an own utility in the range or none
+	 * 			was found within the node budget
+	 */
+	public synchronized Bid optimize(OpponentModel model, BidStrategy strategy, double lower, double upper) {
+		this.strategy = strategy;
+		this.lower = lower;
+		this.upper = upper;
+		prepare(model);
+
+		found = false;
+		bestScore = Double.NEGATIVE_INFINITY;
+		nodes = 0;
+		search(0, 0.0, 0.0);
+
+		if(!found) {
+			return null;
+		}
+		HashMap<Integer, Value> bidValues = new HashMap<Integer, Value>();
+		for(int i = 0; i < bestChoice.length; i++) {
+			bidValues.put(issueNumbers[i], values[i][bestChoice[i]]);
+		}
+		return new Bid(domain, bidValues);
+	}
+
+	/**
+	 * Builds the contribution tables of the opponents and the value order of the search.
+	 */
+	private void prepare(OpponentModel model) {
+		int n = issues.size();
+		agents = model.getAgentCount();
+		if(opponent.length < agents) {
+			opponent = new double[agents][n][];
+			opponentMaxRest = new double[agents][n + 1];
+			partial = new double[agents];
+			for(int a = 0; a < agents; a++) {
+				for(int i = 0; i < n; i++) {
+					opponent[a][i] = new double[values[i].length];
+				}
+			}
+		}
+
+		for(int i = 0; i < n; i++) {
+			Arrays.fill(sum[i], 0.0);
+			for(int a = 0; a < agents; a++) {
+				for(int v = 0; v < values[i].length; v++) {
+					opponent[a][i][v] = model.getContribution(a, i, v);
+					sum[i][v] += opponent[a][i][v];
+				}
+			}
+
+			//try the values that are best for the opponents together first,
+			//with a stable insertion sort as the issues have few values
+			double[] issueSum = sum[i];
+			int[] issueOrder = order[i];
+			for(int v = 0; v < issueOrder.length; v++) {
+				int j = v;
+				while(j > 0 && issueSum[issueOrder[j - 1]] < issueSum[v]) {
+					issueOrder[j] = issueOrder[j - 1];
+					j--;
+				}
+				issueOrder[j] = v;
+			}
+		}
+		for(int i = n - 1; i >= 0; i--) {
+			sumMaxRest[i] = sumMaxRest[i + 1] + max(sum[i]);
+			for(int a = 0; a < agents; a++) {
+				opponentMaxRest[a][i] = opponentMaxRest[a][i + 1] + max(opponent[a][i]);
+			}
+		}
+		Arrays.fill(partial, 0.0);
+	}
+
+	/**
+	 * Depth first branch and bound.
+	 * @param issue
+	 * 			position of the issue to assign
+	 * @param ownSum
+	 * 			our utility of the assigned issues
+	 * @param sumSum
+	 * 			sum of the opponent utilities of the assigned issues, the utility of
+	 * 			each opponent of the assigned issues is kept in partial
+	 */
+	private void search(int issue, double ownSum, double sumSum) {
+		//the budget holds whether or not a bid was found, a search without one gives null
+		if(nodes++ > nodeBudget) {
+			return;
+		}
+		if(issue == issues.size()) {
+			double score = score(sumSum, issue);
+			if(score > bestScore) {
+				bestScore = score;
+				System.arraycopy(choice, 0, bestChoice, 0, choice.length);
+				found = true;
+			}
+			return;
+		}
+		for(int v : order[issue]) {
+			//our own utility must be able to end up in the range
+			double nextOwn = ownSum + own[issue][v];
+			if(nextOwn + ownMaxRest[issue + 1] < lower || nextOwn + ownMinRest[issue + 1] > upper) {
+				continue;
+			}
+			for(int a = 0; a < agents; a++) {
+				partial[a] += opponent[a][issue][v];
+			}
+			double nextSum = sumSum + sum[issue][v];
+
+			//only go deeper if the best reachable score beats the best bid so far
+			if(score(nextSum, issue + 1) > bestScore) {
+				choice[issue] = v;
+				search(issue + 1, nextOwn, nextSum);
+			}
+			for(int a = 0; a < agents; a++) {
+				partial[a] -= opponent[a][issue][v];
+			}
+		}
+	}
+
+	/**
+	 * Computes the best score reachable when the issues from the given position on are free.
+	 * For a complete bid this is its score, as in OpponentModel.getScore.
+	 */
+	private double score(double sumSum, int issue) {
+		if(strategy == BidStrategy.SUM) {
+			return sumSum + sumMaxRest[issue];
+		}
+		double maxMin = 1;
+		for(int a = 0; a < agents; a++) {
+			maxMin = Math.min(maxMin, partial[a] + opponentMaxRest[a][issue]);
+		}
+		return maxMin;
+	}
+
+	private static double min(double[] array) {
+		double min = Double.POSITIVE_INFINITY;
+		for(double d : array) {
+			min = Math.min(min, d);
+		}
+		return min;
+	}
+
+	private static double max(double[] array) {
+		double max = Double.NEGATIVE_INFINITY;
+		for(double d : array) {
+			max = Math.max(max, d);
+		}
+		return max;
+	}
+}
@@ -0,0 +1,85 @@
+package ai2016;
+
+import java.util.function.DoubleUnaryOperator;
+
+import negotiator.Bid;
+import negotiator.Feedback;
+
+/**
+ * Answers the proposals of a mediator (SimpleMediatorBasedProtocol and
+ * MediatorFeedbackBasedProtocol). The utility of a proposal is computed once
+ * when it is received and the acceptance threshold is looked up in a table
+ * indexed by time, so every answer is a single comparison.
+ */
+public class MediatorResponder {
+	//minimum acceptable utility at the start of every time bucket
+	private final double[] thresholds;
+	private final int buckets;
+
+	//the current and the previous proposal of the mediator
+	private Bid proposal;
+	private double utility = -1;
+	private double previousUtility = -1;
+
+	/**
+	 * Constructor of this class.
+	 * @param threshold
+	 * 			the minimum acceptable utility as function of time, which must not
+	 * 			increase over time
+	 * @param buckets
+	 * 			number of time buckets of the table
+	 */
+	public MediatorResponder(DoubleUnaryOperator threshold, int buckets) {
+		this.buckets = buckets;
+		thresholds = new double[buckets + 1];
+		//the value at the start of a bucket is the strictest one within it
+		for(int i = 0; i <= buckets; i++) {
+			thresholds[i] = threshold.applyAsDouble((double) i / buckets);
+		}
+	}
+
+	/**
+	 * Registers a new proposal of the mediator.
+	 * @param bid
+	 * 			the proposal
+	 * @param utility
+	 * 			our utility of the proposal
+	 */
+	public void propose(Bid bid, double utility) {
+		previousUtility = this.utility;
+		proposal = bid;
+		this.utility = utility;
+	}
+
+	/**
+	 * Returns the current proposal.
+	 * @return the proposal, or null if there is none yet
+	 */
+	public Bid getProposal() {
+		return proposal;
+	}
+
+	/**
+	 * Decides whether to accept the current proposal.
+	 * @param time
+	 * 			point in time as fraction of the total time
+	 * @return true if the proposal is acceptable
+	 */
+	public boolean accepts(double time) {
+		int bucket = (int) (time * buckets);
+		return utility >= thresholds[Math.max(0, Math.min(buckets, bucket))];
+	}
+
+	/**
+	 * Compares the current proposal with the previous one.
+	 * @return the feedback for the mediator
+	 */
+	public Feedback getFeedback() {
+		if(utility > previousUtility) {
+			return Feedback.BETTER;
+		} else if(utility < previousUtility) {
+			return Feedback.WORSE;
+		}
+		return Feedback.SAME;
+	}
+}
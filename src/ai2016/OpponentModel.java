@@ -1,23 +1,61 @@
 package ai2016;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import ai2016.EventLog.Level;
 import negotiator.Bid;
 import negotiator.issue.Issue;
+import negotiator.issue.IssueDiscrete;
 import negotiator.issue.Value;
 import negotiator.utility.AbstractUtilitySpace;
 
 /**
  * An opponent model based on the Frequency Analysis Heuristic.
+ * The model of each agent is stored in arrays indexed by the position of the
+ * issue in the domain and the index of the value in the issue, so updating
+ * and reading the model does not allocate once the agent is known.
+ * Issues that are not discrete have no fixed values; their values are
+ * indexed as they are seen, and the tables of an agent grow with them.
  */
 public class OpponentModel {
 	private AbstractUtilitySpace utilSpace;
-	private HashMap<Integer, HashMap<Issue, Double>> weights;
-	private HashMap<Integer, HashMap<Issue, HashMap<Value, Double>>> frequencies, utilities;
+	private final Issue[] issues;
+	//index of each value in its issue, concurrent for issues that are not discrete since the copies share them
+	private final ArrayList<Map<Value, Integer>> valueIndices;
 	private final double factor = (double) 0.1;
 
+	//the agents in the order in which they were first seen
+	private int[] agentHashes = new int[4];
+	private AgentModel[] agents = new AgentModel[4];
+	private int agentCount = 0;
+	//priors of agents that have not been seen yet, taken when the agent is added
+	private final ConcurrentHashMap<Integer, OpponentPriors.Prior> priors = new ConcurrentHashMap<Integer, OpponentPriors.Prior>();
+
+	/**
+	 * The model of a single agent.
+	 */
+	private static class AgentModel {
+		double[] weights;
+		double[][] frequencies;
+		//utility of each value, 0.5 (the expected value for U(0,1)) if it has not been seen yet
+		double[][] utilities;
+		//the model before the current batch, to bound the change
+		double[] oldWeights;
+		double[][] oldUtilities;
+		boolean inBatch;
+		//incremented with every recorded bid, so readers can tell whether the agent changed
+		long version;
+	}
+
 	/**
 	 * Constructor of this class.
 	 * @param us 
@@ -27,139 +65,384 @@ public class OpponentModel {
 		//Store the utility space for future reference
 		utilSpace = us;
 		
-		//Initialize datastructures of the opponent model
-		weights = new HashMap<Integer, HashMap<Issue, Double>>();
-		frequencies = new HashMap<Integer, HashMap<Issue, HashMap<Value, Double>>>();
-		utilities = new HashMap<Integer, HashMap<Issue, HashMap<Value, Double>>>();
+		//Index the values of all issues
+		List<Issue> domainIssues = us.getDomain().getIssues();
+		issues = new Issue[domainIssues.size()];
+		valueIndices = new ArrayList<Map<Value, Integer>>(issues.length);
+		for(int i = 0; i < issues.length; i++) {
+			issues[i] = domainIssues.get(i);
+			if(issues[i] instanceof IssueDiscrete) {
+				IssueDiscrete discrete = (IssueDiscrete) issues[i];
+				HashMap<Value, Integer> indices = new HashMap<Value, Integer>();
+				for(int v = 0; v < discrete.getNumberOfValues(); v++) {
+					indices.put(discrete.getValue(v), v);
+				}
+				valueIndices.add(indices);
+			} else {
+				valueIndices.add(new ConcurrentHashMap<Value, Integer>());
+			}
+		}
+	}
+
+	/**
+	 * Constructor for copies, which share the issues and value indices.
+	 */
+	private OpponentModel(OpponentModel source) {
+		utilSpace = source.utilSpace;
+		issues = source.issues;
+		valueIndices = source.valueIndices;
+		agentHashes = new int[Math.max(4, source.agentCount)];
+		agents = new AgentModel[agentHashes.length];
+	}
+	
+	/**
+	 * A bid received from an opponent, together with the previous bid of that opponent.
+	 */
+	public static class Observation {
+		public final int agentHash;
+		public final Bid bid;
+		public final Bid previousBid;
+
+		/**
+		 * Constructor of this class.
+		 * @param agentHash hash of the agent
+		 * @param bid the new bid of the agent
+		 * @param previousBid the previous bid of that same agent, or null for its first bid
+		 */
+		public Observation(int agentHash, Bid bid, Bid previousBid) {
+			this.agentHash = agentHash;
+			this.bid = bid;
+			this.previousBid = previousBid;
+		}
 	}
 	
 	/**
 	 * Updates the opponent model.
 	 * @param agentHash hash of the agent
-	 * @param newBid the new bid of the agent
-	 * @param previousBid the previous bid of that same agent
+	 * @param agentsBids all bids of the agent, the last one being the new bid
+	 * @return an upper bound on the change of the estimated utility of any bid for this agent
 	 */
-	public void update(int agentHash, ArrayList<Bid> agentsBids) {
-		//Get the opponents latest bid
+	public double update(int agentHash, ArrayList<Bid> agentsBids) {
+		//Get the opponents latest bid and the one before it
 		Bid newBid = agentsBids.get(agentsBids.size()-1);
+		Bid previousBid = agentsBids.size() >= 2 ? agentsBids.get(agentsBids.size()-2) : null;
+		return update(agentHash, newBid, previousBid);
+	}
+	
+	/**
+	 * Updates the opponent model with a single bid.
+	 * @param agentHash hash of the agent
+	 * @param bid the new bid of the agent
+	 * @param previousBid the previous bid of that same agent, or null for its first bid
+	 * @return an upper bound on the change of the estimated utility of any bid for this agent
+	 */
+	public double update(int agentHash, Bid bid, Bid previousBid) {
+		boolean newAgent = indexOfAgent(agentHash) < 0;
+		observe(agentHash, bid, previousBid);
+		double drift = finishBatch();
+		return newAgent ? Double.POSITIVE_INFINITY : drift;
+	}
+	
+	/**
+	 * Updates the opponent model with a batch of observations, in order. The
+	 * weights are normalized after every observation, the utilities only once
+	 * per agent at the end of the batch, which gives the same result.
+	 * @param batch the observations
+	 * @return an upper bound on the change of the estimated utility of any bid for any agent
+	 */
+	public double updateAll(List<Observation> batch) {
+		//A new agent changes the set of agents, which may change every selection
+		boolean newAgent = false;
+		for(int i = 0; i < batch.size(); i++) {
+			Observation o = batch.get(i);
+			newAgent |= indexOfAgent(o.agentHash) < 0;
+			observe(o.agentHash, o.bid, o.previousBid);
+		}
+		double drift = finishBatch();
+		return newAgent ? Double.POSITIVE_INFINITY : drift;
+	}
+	
+	/**
+	 * Records a bid as part of the current batch.
+	 */
+	private void observe(int agentHash, Bid bid, Bid previousBid) {
+		int index = indexOfAgent(agentHash);
+		AgentModel agent = index < 0 ? addAgent(agentHash) : agents[index];
 		
-		//Initialize parts of the datastructures if necessary
-		initializeIfNecessary(agentHash, newBid);
-		
+		//Remember the old model of the agent to bound the change
+		agent.version++;
+		if(!agent.inBatch) {
+			agent.inBatch = true;
+			System.arraycopy(agent.weights, 0, agent.oldWeights, 0, issues.length);
+			for(int i = 0; i < issues.length; i++) {
+				System.arraycopy(agent.utilities[i], 0, agent.oldUtilities[i], 0, agent.utilities[i].length);
+			}
+		}
+		record(agent, bid, previousBid);
+	}
+	
+	/**
+	 * Normalizes the utilities of every agent in the batch and ends the batch.
+	 * @return the sum of the drift bounds of these agents
+	 */
+	private double finishBatch() {
+		double drift = 0.0;
+		for(int a = 0; a < agentCount; a++) {
+			AgentModel agent = agents[a];
+			if(agent.inBatch) {
+				normalizeUtilitiesOfAgent(agent);
+				drift += computeDrift(agent);
+				agent.inBatch = false;
+			}
+		}
+		return drift;
+	}
+	
+	/**
+	 * Records a single bid of an agent and normalizes its weights.
+	 * @param agent the model of the agent
+	 * @param newBid the new bid of the agent
+	 * @param previousBid the previous bid of that same agent, or null
+	 */
+	private void record(AgentModel agent, Bid newBid, Bid previousBid) {
 		//For each issue in the new bid		
-		for(Issue i : newBid.getIssues()) {	
+		for(int i = 0; i < issues.length; i++) {
+			Value value = newBid.getValue(issues[i].getNumber());
+			
 			//STEP 1: UPDATE WEIGHTS
 			//Note: this is only possible if this is not the first bid by this agent
-			if(agentsBids.size() >= 2) {
-				//Get the previous bid by this agent
-				Bid previousBid = agentsBids.get(agentsBids.size()-2);
-				//If the value for this issue is same as the one in the previous bid, then increase the weight
-				if(newBid.getValue(i.getNumber()).equals(previousBid.getValue(i.getNumber()))) {
-					double currentWeight = weights.get(agentHash).get(i);
-					weights.get(agentHash).put(i, currentWeight + factor);
-				}
+			//If the value for this issue is same as the one in the previous bid, then increase the weight
+			if(previousBid != null && value.equals(previousBid.getValue(issues[i].getNumber()))) {
+				agent.weights[i] += factor;
 			}
 			
 			//STEP 2: UPDATE UTILITIES
-			//If value has not been seen before, initialize it
-			if(!frequencies.get(agentHash).get(i).containsKey(newBid.getValue(i.getNumber()))) {
-				frequencies.get(agentHash).get(i).put(newBid.getValue(i.getNumber()), 0.0);
-			}
 			//Increment frequency for this value of this issue
-			double freq = frequencies.get(agentHash).get(i).get(newBid.getValue(i.getNumber()));
-			frequencies.get(agentHash).get(i).put(newBid.getValue(i.getNumber()), freq + 1.0);
+			int v = indexOfValue(i, value);
+			if(v < 0 && !(issues[i] instanceof IssueDiscrete)) {
+				v = addValue(i, value);
+			}
+			if(v >= 0) {
+				if(v >= agent.frequencies[i].length) {
+					growIssue(agent, i, v + 1);
+				}
+				agent.frequencies[i][v] += 1.0;
+			}
 		}
 		
-		//After the update, normalize all data
-		normalizeAgentData(agentHash);		
+		normalizeWeightsOfAgent(agent);
 	}
 	
 	/**
-	 * Normalizes model for this agent.
-	 * @param agentHash
-	 * 				Unique identifier for this agent
+	 * Computes an upper bound on the change of the estimated utility of any bid,
+	 * by taking for each issue the largest change of weight times utility over all values.
+	 * @param agent
+	 * 				the model of the agent, with the model before the batch
+	 * @return the bound
 	 */
-	private void normalizeAgentData(int agentHash) {
-		normalizeWeightsOfAgent(agentHash);
-		normalizeUtilitiesOfAgent(agentHash);
+	private double computeDrift(AgentModel agent) {
+		double drift = 0.0;
+		for(int i = 0; i < issues.length; i++) {
+			double newWeight = agent.weights[i];
+			double oldWeight = agent.oldWeights[i];
+			
+			//values that were not seen yet are estimated at 0.5
+			double max = Math.abs(newWeight - oldWeight) * 0.5;
+			for(int v = 0; v < agent.utilities[i].length; v++) {
+				if(agent.frequencies[i][v] > 0) {
+					max = Math.max(max, Math.abs(newWeight * agent.utilities[i][v] - oldWeight * agent.oldUtilities[i][v]));
+				}
+			}
+			drift += max;
+		}
+		return drift;
 	}
-
+	
+	/**
+	 * Creates a deep copy of this model, which can be read by another thread
+	 * while this model is updated.
+	 * @return the copy
+	 */
+	public OpponentModel copy() {
+		OpponentModel copy = new OpponentModel(this);
+		for(int a = 0; a < agentCount; a++) {
+			copy.agentHashes[a] = agentHashes[a];
+			copy.agents[a] = copyAgent(agents[a]);
+		}
+		copy.agentCount = agentCount;
+		return copy;
+	}
+	
+	/**
+	 * Creates a copy of this model that shares the data of all unchanged agents
+	 * with a previous copy. Copies are never updated, so sharing is safe.
+	 * @param previous
+	 * 			a previous copy of this model, or null
+	 * @param changed
+	 * 			the agents that were updated since the previous copy
+	 * @return the copy
+	 */
+	public OpponentModel copy(OpponentModel previous, Set<Integer> changed) {
+		if(previous == null) {
+			return copy();
+		}
+		OpponentModel copy = new OpponentModel(this);
+		for(int a = 0; a < agentCount; a++) {
+			int index = previous.indexOfAgent(agentHashes[a]);
+			copy.agentHashes[a] = agentHashes[a];
+			if(changed.contains(agentHashes[a]) || index < 0) {
+				copy.agents[a] = copyAgent(agents[a]);
+			} else {
+				copy.agents[a] = previous.agents[index];
+			}
+		}
+		copy.agentCount = agentCount;
+		return copy;
+	}
+	
+	/**
+	 * Copies the tables of an agent, without the state of the batch.
+	 */
+	private static AgentModel copyAgent(AgentModel agent) {
+		AgentModel copy = new AgentModel();
+		copy.weights = agent.weights.clone();
+		copy.frequencies = copyTables(agent.frequencies);
+		copy.utilities = copyTables(agent.utilities);
+		copy.version = agent.version;
+		return copy;
+	}
+	
+	private static double[][] copyTables(double[][] tables) {
+		double[][] copy = new double[tables.length][];
+		for(int i = 0; i < tables.length; i++) {
+			copy[i] = tables[i].clone();
+		}
+		return copy;
+	}
+	
 	/**
 	 * Normalizes the weights for this agent.
-	 * @param agentHash
-	 * 				Unique identifier for this agent
+	 * @param agent
+	 * 				the model of the agent
 	 */
-	private void normalizeWeightsOfAgent(int agentHash) {
-		//Get the weights of this agent
-		HashMap<Issue, Double> agentWeights = weights.get(agentHash);
-		
+	private void normalizeWeightsOfAgent(AgentModel agent) {
 		//Compute the sum of all weights
 		double sum = (double) 0.0;
-		for(Issue i : agentWeights.keySet()) {
-			sum += agentWeights.get(i);
+		for(int i = 0; i < issues.length; i++) {
+			sum += agent.weights[i];
 		}
 		
 		//Divide all weights by the sum to normalize
-		for(Issue i : agentWeights.keySet()) {
-			double oldWeight = weights.get(agentHash).get(i);
-			weights.get(agentHash).put(i, oldWeight / sum);
+		for(int i = 0; i < issues.length; i++) {
+			agent.weights[i] /= sum;
 		}
 	}
 
 	/**
 	 * Normalizes the utility values for this agent.
-	 * @param agentHash
-	 * 				Unique identifier for this agent
+	 * @param agent
+	 * 				the model of the agent
 	 */
-	private void normalizeUtilitiesOfAgent(int agentHash) {
-		//Get the frequencies of the values of this agent
-		HashMap<Issue, HashMap<Value, Double>> agentUtils = frequencies.get(agentHash);
-		
+	private void normalizeUtilitiesOfAgent(AgentModel agent) {
 		//For each issue
-		for(Issue i : agentUtils.keySet()) {
-			HashMap<Value, Double> issueUtils = agentUtils.get(i);
+		for(int i = 0; i < issues.length; i++) {
+			double[] frequencies = agent.frequencies[i];
 			
 			//Find the biggest value of this issue
-			double max = (double) Integer.MIN_VALUE;
-			for(double val : issueUtils.values()) {
+			double max = 0.0;
+			for(double val : frequencies) {
 				max = Double.max(max, val);
 			}
 			
-			//Normalize all values by dividing them by the maximum
-			for(Value option : issueUtils.keySet()) {
-				double oldUtil = agentUtils.get(i).get(option);
-				utilities.get(agentHash).get(i).put(option, oldUtil / max);
+			//Normalize all seen values by dividing them by the maximum
+			for(int v = 0; v < frequencies.length; v++) {
+				if(frequencies[v] > 0) {
+					agent.utilities[i][v] = frequencies[v] / max;
+				}
 			}
 		}
 	}
 	
 	/**
-	 * Initializes parts of the datastructure if necessary.
+	 * Adds the model of a new agent.
 	 * @param agentHash
 	 * 				Unique identifier for this agent
-	 * @param newBid
-	 */
-	private void initializeIfNecessary(int agentHash, Bid newBid) {
-		//If agent has not been seen before, initialize it
-		if(!weights.containsKey(agentHash) || !frequencies.containsKey(agentHash)) {
-			weights.put(agentHash, new HashMap<Issue, Double>());
-			frequencies.put(agentHash, new HashMap<Issue, HashMap<Value, Double>>());
-			utilities.put(agentHash, new HashMap<Issue, HashMap<Value, Double>>());
-			
-			//Initialize all issues
-			for(Issue i : newBid.getIssues()) {
-				//If issue has not been seen before in weights, initialize it
-				if(!weights.get(agentHash).containsKey(i)) {
-					double initialWeight = ((double) 1.0 / (double) newBid.getIssues().size());
-					weights.get(agentHash).put(i, initialWeight);
-				}
-				//If issue has not been seen before in utilities, initialize it
-				if(!frequencies.get(agentHash).containsKey(i)) {
-					frequencies.get(agentHash).put(i, new HashMap<Value, Double>());
-					utilities.get(agentHash).put(i, new HashMap<Value, Double>());
-				}
+	 * @return the model
+	 */
+	private AgentModel addAgent(int agentHash) {
+		if(agentCount == agents.length) {
+			agentHashes = Arrays.copyOf(agentHashes, agentCount * 2);
+			agents = Arrays.copyOf(agents, agentCount * 2);
+		}
+		AgentModel agent = new AgentModel();
+		agent.weights = new double[issues.length];
+		agent.oldWeights = new double[issues.length];
+		agent.frequencies = new double[issues.length][];
+		agent.utilities = new double[issues.length][];
+		agent.oldUtilities = new double[issues.length][];
+		
+		//Initialize all issues
+		for(int i = 0; i < issues.length; i++) {
+			int values = valueIndices.get(i).size();
+			agent.weights[i] = (double) 1.0 / (double) issues.length;
+			agent.frequencies[i] = new double[values];
+			agent.utilities[i] = new double[values];
+			agent.oldUtilities[i] = new double[values];
+			Arrays.fill(agent.utilities[i], 0.5);
+		}
+		OpponentPriors.Prior prior = priors.remove(agentHash);
+		if(prior != null) {
+			//Start from what was learned about this type of agent in earlier sessions
+			System.arraycopy(prior.weights, 0, agent.weights, 0, issues.length);
+			for(int i = 0; i < issues.length; i++) {
+				System.arraycopy(prior.frequencies[i], 0, agent.frequencies[i], 0, agent.frequencies[i].length);
+			}
+			normalizeUtilitiesOfAgent(agent);
+		}
+		agentHashes[agentCount] = agentHash;
+		agents[agentCount] = agent;
+		agentCount++;
+		return agent;
+	}
+	
+	private int indexOfAgent(int agentHash) {
+		for(int a = 0; a < agentCount; a++) {
+			if(agentHashes[a] == agentHash) {
+				return a;
 			}
 		}
+		return -1;
+	}
+	
+	private int indexOfValue(int issue, Value value) {
+		Integer index = valueIndices.get(issue).get(value);
+		return index == null ? -1 : index;
+	}
+	
+	/**
+	 * Indexes a new value of an issue that is not discrete. Only the thread
+	 * that updates the model adds values.
+	 */
+	private int addValue(int issue, Value value) {
+		Map<Value, Integer> indices = valueIndices.get(issue);
+		int index = indices.size();
+		indices.put(value, index);
+		return index;
+	}
+	
+	/**
+	 * Grows the tables of an issue of an agent to a number of values. The
+	 * new values were not seen yet, before and during the batch.
+	 */
+	private static void growIssue(AgentModel agent, int issue, int values) {
+		int old = agent.frequencies[issue].length;
+		agent.frequencies[issue] = Arrays.copyOf(agent.frequencies[issue], values);
+		agent.utilities[issue] = Arrays.copyOf(agent.utilities[issue], values);
+		Arrays.fill(agent.utilities[issue], old, values, 0.5);
+		if(agent.oldUtilities != null) {
+			agent.oldUtilities[issue] = Arrays.copyOf(agent.oldUtilities[issue], values);
+			Arrays.fill(agent.oldUtilities[issue], old, values, 0.5);
+		}
 	}
 	
 	/**
@@ -171,93 +454,327 @@ public class OpponentModel {
 	 */
 	public double getOpponentUtility(int agentHash, Bid bid) {
 		//if the agent is not modelled yet
-		if(!frequencies.containsKey(agentHash) || !weights.containsKey(agentHash)) {
-			System.out.println("Agent Unknown");
+		int index = indexOfAgent(agentHash);
+		if(index < 0) {
+			EventLog.log(Level.DEBUG, "OpponentModel", "Agent Unknown");
 			return Double.MAX_VALUE;
 		}
-		
-		//Get information for this agent
-		HashMap<Issue, HashMap<Value, Double>> agentUtils = utilities.get(agentHash);
-		HashMap<Issue, Double> agentWeights = weights.get(agentHash);
-		
-		
-		//Compute estimate with linear utility function
+		return getOpponentUtility(agents[index], bid);
+	}
+	
+	/**
+	 * Computes the estimate with the linear utility function of an agent.
+	 */
+	private double getOpponentUtility(AgentModel agent, Bid bid) {
 		double utility = 0.0;
-		for(Issue i : agentUtils.keySet()) {
-			//If a utility is not available
-			if(!agentUtils.get(i).containsKey(bid.getValue(i.getNumber()))) {
-				//expected value for U(0,1)
-				utility += agentWeights.get(i) * 0.5;			
-			} else {
-				utility += agentWeights.get(i) * agentUtils.get(i).get(bid.getValue(i.getNumber()));
-			}
+		for(int i = 0; i < issues.length; i++) {
+			int v = indexOfValue(i, bid.getValue(issues[i].getNumber()));
+			//If a utility is not available, use the expected value for U(0,1)
+			utility += agent.weights[i] * (v < 0 || v >= agent.utilities[i].length ? 0.5 : agent.utilities[i][v]);
 		}
-		
 		return utility;
 	}
 	
 	/**
-	 * Returns the identifiers of all agents in the model.
+	 * Computes the contribution of a single value to the estimated utility of an
+	 * agent, so that getOpponentUtility is the sum of the contributions of the
+	 * values of a bid.
+	 * @param agent
+	 * 				Index of the agent, from 0 to getAgentCount()
+	 * @param issue
+	 * 				Position of the issue in the domain
+	 * @param value
+	 * 				Index of the value in the issue
+	 * @return the weight of the issue times the utility of the value
+	 */
+	public double getContribution(int agent, int issue, int value) {
+		return agents[agent].weights[issue] * agents[agent].utilities[issue][value];
+	}
+	
+	/**
+	 * Returns the number of agents in the model.
 	 * @return
 	 */
-	public Set<Integer> getAgentHashes() {
-		return weights.keySet();
+	public int getAgentCount() {
+		return agentCount;
+	}
+	
+	/**
+	 * Returns the identifier of an agent in the model.
+	 * @param agent
+	 * 				Index of the agent, from 0 to getAgentCount()
+	 * @return the hash of the agent
+	 */
+	public int getAgentHash(int agent) {
+		return agentHashes[agent];
+	}
+	
+	/**
+	 * Returns the version of the model of an agent, which changes with every
+	 * bid that is recorded for the agent and is kept by copies.
+	 * @param agent
+	 * 				Index of the agent, from 0 to getAgentCount()
+	 * @return the version
+	 */
+	public long getAgentVersion(int agent) {
+		return agents[agent].version;
+	}
+	
+	/**
+	 * Computes the estimated utility of a bid for an agent.
+	 * @param agent
+	 * 				Index of the agent, from 0 to getAgentCount()
+	 * @param bid
+	 * 				the bid
+	 * @return the estimate
+	 */
+	public double getAgentUtility(int agent, Bid bid) {
+		return getOpponentUtility(agents[agent], bid);
+	}
+	
+	/**
+	 * Sets the model that an agent starts from when its first bid is recorded.
+	 * Only for domains with discrete issues.
+	 * Has no effect on agents that are already in the model. May be called
+	 * from another thread than the updates.
+	 * @param agentHash
+	 * 				Unique identifier for this agent
+	 * @param prior
+	 * 				the weights and value frequencies to start from, see OpponentPriors
+	 */
+	public void setPrior(int agentHash, OpponentPriors.Prior prior) {
+		priors.put(agentHash, prior);
+	}
+	
+	/**
+	 * Returns copies of the weights and value frequencies of an agent, to be
+	 * stored as a prior for later sessions.
+	 * @param agent
+	 * 				Index of the agent, from 0 to getAgentCount()
+	 * @return the weights and frequencies
+	 */
+	public OpponentPriors.Prior toPrior(int agent) {
+		return new OpponentPriors.Prior(agents[agent].weights.clone(), copyTables(agents[agent].frequencies));
+	}
+	
+	/**
+	 * Writes the tables of all agents, for a checkpoint of the agent. Only
+	 * for domains with discrete issues, whose tables have a fixed size.
+	 * @param out
+	 * 				the output
+	 * @throws IOException if the output fails
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(agentCount);
+		for(int a = 0; a < agentCount; a++) {
+			AgentModel agent = agents[a];
+			out.writeInt(agentHashes[a]);
+			for(int i = 0; i < issues.length; i++) {
+				out.writeDouble(agent.weights[i]);
+				for(int v = 0; v < agent.frequencies[i].length; v++) {
+					out.writeDouble(agent.frequencies[i][v]);
+					out.writeDouble(agent.utilities[i][v]);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Adds the agents written by write to this model, which must be of the same domain.
+	 * @param in
+	 * 				the input
+	 * @throws IOException if the input fails or holds an agent that is already in the model
+	 */
+	public void read(DataInput in) throws IOException {
+		int count = in.readInt();
+		for(int a = 0; a < count; a++) {
+			int agentHash = in.readInt();
+			if(indexOfAgent(agentHash) >= 0) {
+				throw new IOException("Agent " + agentHash + " is already in the model");
+			}
+			AgentModel agent = addAgent(agentHash);
+			for(int i = 0; i < issues.length; i++) {
+				agent.weights[i] = in.readDouble();
+				for(int v = 0; v < agent.frequencies[i].length; v++) {
+					agent.frequencies[i][v] = in.readDouble();
+					agent.utilities[i][v] = in.readDouble();
+				}
+			}
+		}
 	}
 
 	/**
-	 * Select a nice bid based on the feasible bids and according to a given bid strategy.
-	 * @param feasibleBids
-	 * 				The list of feasible bids
-	 * @param strategy
-	 * 				The strategy to apply
-	 * @return the selected bid
+	 * The result of a selection over a range of bids.
 	 */
-	public Bid formNiceBid(ArrayList<Bid> feasibleBids, BidStrategy strategy) {
+	public static class Selection {
+		//index of the selected bid in the list, or -1 if the range was empty
+		public int index = -1;
+		//score of the selected bid
+		public double score;
+		//highest score of all other bids in the range
+		public double runnerUp = Double.NEGATIVE_INFINITY;
+		//bids that we offered before, null to only select the best bid
+		public OutcomeSet offered = null;
+		//the best bid of the range that is not in offered, -1 if there is none
+		public int freshIndex = -1;
+		public double freshScore = Double.NEGATIVE_INFINITY;
 		
-		double maxSumBidUtility = 0;
-		Bid maxSumBid = null;
-		double maxMinBidUtility = 1;
-		Bid maxMinBid = null;
+		/**
+		 * Empties the selection, keeping the offered bids.
+		 */
+		public void reset() {
+			index = -1;
+			score = Double.NEGATIVE_INFINITY;
+			runnerUp = Double.NEGATIVE_INFINITY;
+			freshIndex = -1;
+			freshScore = Double.NEGATIVE_INFINITY;
+		}
 		
-		//Investigate all bids
-		for(Bid b : feasibleBids) {
-			
-			double maxMin = 1;
-			double sum = 0;
-			
-			//Compute utility value of this bid for each agent
-			for(int hash : weights.keySet()) {
-				//we have to calculate the utility of every opponent 
-				double opponentUtility = getOpponentUtility(hash, b);
-				//calculate the sum over the opponents utility for the bid
-				sum += opponentUtility;
-				//calculate the maxMin utility for the bid
-				if(opponentUtility <= maxMin) {
-					maxMin = opponentUtility;
-				}	
-			}
-			
-			//update maxSumBid and maxMinBid if we found a better bid
-			if(sum >= maxSumBidUtility) {
-				maxSumBidUtility = sum;
-				maxSumBid = b;
-			}
-			
-			if(maxMin >= maxMinBidUtility) {
-				maxMinBidUtility = maxMin;
-				maxMinBid = b;
+		/**
+		 * Considers a bid of the range as the best bid that was not offered
+		 * before. The offered bids are only checked for bids that would
+		 * become the fresh candidate, so a scan checks few of them.
+		 * @param j
+		 * 				Index of the bid
+		 * @param score
+		 * 				Score of the bid
+		 * @param bids
+		 * 				The list of bids
+		 */
+		public void considerFresh(int j, double score, List<Bid> bids) {
+			if(offered != null && score >= freshScore && !offered.contains(bids.get(j))) {
+				freshScore = score;
+				freshIndex = j;
 			}
 		}
 		
-		//Return the bid according to the strategy
-		if(strategy == BidStrategy.SUM) {
-			return maxSumBid;
+		/**
+		 * Returns the bid to offer when rotating among near-equivalent bids:
+		 * the best bid that was not offered before if its score is close to
+		 * the best score, and the best bid otherwise.
+		 * @param tolerance
+		 * 				The largest difference in score that counts as equivalent
+		 * @return the index of the bid, or -1 if the range was empty
+		 */
+		public int getRotatedIndex(double tolerance) {
+			if(freshIndex >= 0 && freshScore >= score - tolerance) {
+				return freshIndex;
+			}
+			return index;
 		}
-		else if(strategy == BidStrategy.MIN) {
-			return maxMinBid;
+	}
+
+	/**
+	 * Computes the score of a bid according to a given bid strategy.
+	 * @param bid
+	 * 				The bid to score
+	 * @param strategy
+	 * 				The strategy to apply
+	 * @return the sum of the opponent utilities for SUM, the minimum (at most 1) for MIN
+	 */
+	public double getScore(Bid bid, BidStrategy strategy) {
+		double maxMin = 1;
+		double sum = 0;
+		
+		//Compute utility value of this bid for each agent
+		for(int a = 0; a < agentCount; a++) {
+			//we have to calculate the utility of every opponent 
+			double opponentUtility = getOpponentUtility(agents[a], bid);
+			//calculate the sum over the opponents utility for the bid
+			sum += opponentUtility;
+			//calculate the maxMin utility for the bid
+			if(opponentUtility <= maxMin) {
+				maxMin = opponentUtility;
+			}	
 		}
-		else {
-			return null;
+		return strategy == BidStrategy.SUM ? sum : maxMin;
+	}
+
+	/**
+	 * Selects the best bid in a range of a list according to a given bid strategy.
+	 * On equal scores the last bid wins.
+	 * @param bids
+	 * 				The list of bids
+	 * @param from
+	 * 				First index of the range
+	 * @param to
+	 * 				Index after the last bid of the range
+	 * @param strategy
+	 * 				The strategy to apply
+	 * @return the selection
+	 */
+	public Selection select(List<Bid> bids, int from, int to, BidStrategy strategy) {
+		return select(bids, from, to, strategy, new Selection());
+	}
+
+	/**
+	 * Selects the best bid in a range of a list into an existing selection,
+	 * which is reset first. On equal scores the last bid wins.
+	 * @param bids
+	 * 				The list of bids
+	 * @param from
+	 * 				First index of the range
+	 * @param to
+	 * 				Index after the last bid of the range
+	 * @param strategy
+	 * 				The strategy to apply
+	 * @param selection
+	 * 				The selection to fill in
+	 * @return the selection
+	 */
+	public Selection select(List<Bid> bids, int from, int to, BidStrategy strategy, Selection selection) {
+		selection.reset();
+		
+		//Investigate all bids
+		for(int j = from; j < to; j++) {
+			double score = getScore(bids.get(j), strategy);
+			selection.considerFresh(j, score, bids);
+			
+			//update the selection if we found a better bid
+			if(score >= selection.score) {
+				if(selection.index >= 0) {
+					selection.runnerUp = Math.max(selection.runnerUp, selection.score);
+				}
+				selection.score = score;
+				selection.index = j;
+			} else {
+				selection.runnerUp = Math.max(selection.runnerUp, score);
+			}
 		}
+		return selection;
+	}
+
+	/**
+	 * Select a nice bid based on the feasible bids and according to a given bid strategy.
+	 * @param feasibleBids
+	 * 				The list of feasible bids
+	 * @param strategy
+	 * 				The strategy to apply
+	 * @return the selected bid
+	 */
+	public Bid formNiceBid(ArrayList<Bid> feasibleBids, BidStrategy strategy) {
+		Selection selection = select(feasibleBids, 0, feasibleBids.size(), strategy);
+		return selection.index >= 0 ? feasibleBids.get(selection.index) : null;
+	}
+
+	/**
+	 * Select a nice bid like formNiceBid, but rotate among the bids whose
+	 * score is close to the best one instead of repeating an earlier offer.
+	 * @param feasibleBids
+	 * 				The list of feasible bids
+	 * @param strategy
+	 * 				The strategy to apply
+	 * @param offered
+	 * 				The bids that we offered before
+	 * @param tolerance
+	 * 				The largest difference in score that counts as equivalent
+	 * @return the selected bid
+	 */
+	public Bid formNiceBid(ArrayList<Bid> feasibleBids, BidStrategy strategy, OutcomeSet offered, double tolerance) {
+		Selection selection = new Selection();
+		selection.offered = offered;
+		select(feasibleBids, 0, feasibleBids.size(), strategy, selection);
+		int index = selection.getRotatedIndex(tolerance);
+		return index >= 0 ? feasibleBids.get(index) : null;
 	}
-}
\ No newline at end of file
+}
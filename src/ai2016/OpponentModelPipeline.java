@@ -0,0 +1,273 @@
+package ai2016;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import negotiator.Bid;
+
+/**
+ * Applies received bids to the opponent model on a background thread, so the
+ * protocol thread only has to queue them. The worker drains the queue in
+ * batches and after each batch publishes an immutable copy of the model.
+ * Readers use the latest copy without any locking.
+ *
+ * In synchronous mode the bids are applied on the protocol thread and the
+ * snapshot is the live model itself, so nothing is copied and nothing is
+ * allocated per bid. The drift is not tracked then, as the model may only
+ * be read from the protocol thread.
+ */
+public class OpponentModelPipeline {
+	/**
+	 * An immutable copy of the opponent model.
+	 */
+	public static class Snapshot {
+		public final OpponentModel model;
+		//sum of the drift bounds of all updates since a new agent appeared
+		public final double totalDrift;
+		//number of times a new agent appeared
+		public final int agents;
+		//number of observations applied up to this snapshot
+		public final long version;
+
+		Snapshot(OpponentModel model, double totalDrift, int agents, long version) {
+			this.model = model;
+			this.totalDrift = totalDrift;
+			this.agents = agents;
+			this.version = version;
+		}
+
+		/**
+		 * Returns an upper bound on the change of the estimated utility of any
+		 * bid for any agent between an earlier snapshot and this one.
+		 * @param earlier
+		 * 			the earlier snapshot
+		 * @return the bound, infinite if an agent was added in between
+		 */
+		public double driftSince(Snapshot earlier) {
+			if(earlier.agents != agents) {
+				return Double.POSITIVE_INFINITY;
+			}
+			return totalDrift - earlier.totalDrift;
+		}
+	}
+
+	//the model that is updated, only touched by the worker (or by submit when synchronous)
+	private final OpponentModel model;
+	private final LinkedBlockingQueue<OpponentModel.Observation> queue = new LinkedBlockingQueue<OpponentModel.Observation>();
+	private final Thread worker;
+	private volatile Snapshot snapshot;
+	//decides how each bid is applied, null to apply every bid
+	private final UpdateScheduler scheduler;
+	//bids deferred by the scheduler and the number of our turns since the oldest, only touched by the protocol thread
+	private final ArrayList<OpponentModel.Observation> deferred = new ArrayList<OpponentModel.Observation>();
+	private int deferredTurns = 0;
+
+	//statistics, written by the worker or, when synchronous, by the protocol thread
+	private volatile long batches = 0;
+	private volatile long applied = 0;
+
+	/**
+	 * Constructor of this class.
+	 * @param model
+	 * 			the model to update
+	 * @param asynchronous
+	 * 			whether to apply the updates on a background thread
+	 */
+	public OpponentModelPipeline(OpponentModel model, boolean asynchronous) {
+		this(model, asynchronous, null);
+	}
+
+	/**
+	 * Constructor of this class.
+	 * @param model
+	 * 			the model to update
+	 * @param asynchronous
+	 * 			whether to apply the updates on a background thread
+	 * @param scheduler
+	 * 			decides how each bid is applied, or null to apply every bid
+	 */
+	public OpponentModelPipeline(OpponentModel model, boolean asynchronous, UpdateScheduler scheduler) {
+		this.model = model;
+		this.scheduler = scheduler;
+		if(asynchronous) {
+			snapshot = new Snapshot(model.copy(), 0.0, 0, 0);
+			worker = new Thread(this::run, "Group7-opponent-model");
+			worker.setDaemon(true);
+			worker.start();
+		} else {
+			snapshot = new Snapshot(model, 0.0, 0, 0);
+			worker = null;
+		}
+	}
+
+	/**
+	 * Queues a received bid.
+	 * @param agentHash
+	 * 			hash of the agent
+	 * @param bid
+	 * 			the new bid of the agent
+	 * @param previousBid
+	 * 			the previous bid of that same agent, or null
+	 */
+	public void submit(int agentHash, Bid bid, Bid previousBid) {
+		if(scheduler != null) {
+			switch(scheduler.decide()) {
+			case DROP:
+				return;
+			case DEFER:
+				deferred.add(new OpponentModel.Observation(agentHash, bid, previousBid));
+				if(scheduler.isBatchFull(deferred.size())) {
+					flushDeferred();
+				}
+				return;
+			default:
+				//apply the bid together with the ones deferred before it
+				if(!deferred.isEmpty()) {
+					deferred.add(new OpponentModel.Observation(agentHash, bid, previousBid));
+					flushDeferred();
+					return;
+				}
+			}
+		}
+		if(worker == null) {
+			long start = System.nanoTime();
+			double drift = model.update(agentHash, bid, previousBid);
+			recordUpdate(1, start, drift);
+		} else {
+			queue.add(new OpponentModel.Observation(agentHash, bid, previousBid));
+		}
+	}
+
+	/**
+	 * Sets the model that an agent starts from, see OpponentModel.setPrior.
+	 * Must be called before the first bid of the agent is submitted.
+	 * @param agentHash
+	 * 			hash of the agent
+	 * @param prior
+	 * 			the weights and value frequencies to start from
+	 */
+	public void setPrior(int agentHash, OpponentPriors.Prior prior) {
+		model.setPrior(agentHash, prior);
+	}
+
+	/**
+	 * Queues received bids together. Without a worker they are applied as a
+	 * single batch, otherwise the worker picks them up in its next batch.
+	 * @param observations
+	 * 			the bids with their agents
+	 */
+	public void submitAll(List<OpponentModel.Observation> observations) {
+		if(observations.isEmpty()) {
+			return;
+		}
+		if(worker == null) {
+			long start = System.nanoTime();
+			double drift = model.updateAll(observations);
+			recordUpdate(observations.size(), start, drift);
+		} else {
+			queue.addAll(observations);
+		}
+	}
+
+	private void flushDeferred() {
+		submitAll(deferred);
+		deferred.clear();
+		deferredTurns = 0;
+	}
+
+	/**
+	 * Marks the start of a turn of the agent, for the scheduler. Bids that
+	 * were deferred too many turns ago are applied now.
+	 */
+	public void startTurn() {
+		if(scheduler != null) {
+			scheduler.startTurn(System.nanoTime());
+			if(!deferred.isEmpty() && scheduler.isDeferralExpired(++deferredTurns)) {
+				flushDeferred();
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of bids that the scheduler deferred and that are not applied yet.
+	 * @return the number of bids
+	 */
+	public int getDeferredCount() {
+		return deferred.size();
+	}
+
+	/**
+	 * Updates the statistics and informs the scheduler about an applied update.
+	 */
+	private void recordUpdate(int bids, long start, double drift) {
+		if(scheduler != null) {
+			scheduler.recordUpdate(bids, System.nanoTime() - start, drift);
+		}
+		applied += bids;
+		batches++;
+	}
+
+	/**
+	 * Returns the latest published copy of the model.
+	 * @return the snapshot
+	 */
+	public Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * The loop of the worker: wait for a bid, then apply everything that is queued.
+	 */
+	private void run() {
+		ArrayList<OpponentModel.Observation> batch = new ArrayList<OpponentModel.Observation>();
+		try {
+			while(true) {
+				batch.add(queue.take());
+				queue.drainTo(batch);
+				apply(batch);
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			//shutdown
+		}
+	}
+
+	/**
+	 * Applies a batch and publishes the new snapshot.
+	 */
+	private void apply(ArrayList<OpponentModel.Observation> batch) {
+		long start = System.nanoTime();
+		HashSet<Integer> changed = new HashSet<Integer>();
+		for(OpponentModel.Observation o : batch) {
+			changed.add(o.agentHash);
+		}
+		double drift = model.updateAll(batch);
+
+		//copy on write: unchanged agents are shared with the previous snapshot
+		Snapshot previous = snapshot;
+		OpponentModel copy = model.copy(previous.model, changed);
+		if(Double.isInfinite(drift)) {
+			snapshot = new Snapshot(copy, 0.0, previous.agents + 1, previous.version + batch.size());
+		} else {
+			snapshot = new Snapshot(copy, previous.totalDrift + drift, previous.agents, previous.version + batch.size());
+		}
+		recordUpdate(batch.size(), start, drift);
+	}
+
+	/**
+	 * Stops the worker.
+	 */
+	public void shutdown() {
+		if(worker != null) {
+			worker.interrupt();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "opponent model: " + applied + " bids in " + batches + " batches"
+				+ (scheduler == null ? "" : ", " + scheduler);
+	}
+}
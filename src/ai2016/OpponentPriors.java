@@ -0,0 +1,288 @@
+package ai2016;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import ai2016.EventLog.Level;
+import negotiator.AgentID;
+import negotiator.Domain;
+import negotiator.issue.Issue;
+import negotiator.issue.IssueDiscrete;
+
+/**
+ * A store of what was learned about the opponents in earlier sessions, used
+ * as the starting point of the opponent model. The store keeps, per domain
+ * and per type of opponent, the issue weights and the distribution of the
+ * offered values of the last session against that type. Each domain has its
+ * own file of at most MAX_TYPES opponent types, and the directory holds at
+ * most MAX_DOMAINS files; the least recently used are dropped first.
+ */
+public class OpponentPriors {
+	private static final int MAGIC = 0x47375052;
+	private static final int VERSION = 1;
+	private static final int MAX_TYPES = 32;
+	private static final int MAX_DOMAINS = 64;
+	private static final String SUFFIX = ".priors";
+
+	/**
+	 * The issue weights and value frequencies of an agent.
+	 */
+	public static class Prior {
+		public final double[] weights;
+		public final double[][] frequencies;
+
+		/**
+		 * Constructor of this class.
+		 * @param weights
+		 * 			weight of each issue
+		 * @param frequencies
+		 * 			frequency of each value of each issue
+		 */
+		public Prior(double[] weights, double[][] frequencies) {
+			this.weights = weights;
+			this.frequencies = frequencies;
+		}
+	}
+
+	/**
+	 * What is stored about one type of opponent, in single precision.
+	 */
+	private static class Entry {
+		String type;
+		long lastUsed;
+		int sessions;
+		float[] weights;
+		//distribution of the offered values, each issue sums to 1 unless nothing was offered
+		float[][] distributions;
+	}
+
+	private final File dir;
+	private final File file;
+	private final int[] valueCounts;
+	private final HashMap<String, Entry> entries = new HashMap<String, Entry>();
+
+	private OpponentPriors(File dir, Domain domain) {
+		this.dir = dir;
+		this.file = new File(dir, Long.toHexString(domainKey(domain)) + SUFFIX);
+		List<Issue> issues = domain.getIssues();
+		valueCounts = new int[issues.size()];
+		for(int i = 0; i < valueCounts.length; i++) {
+			valueCounts[i] = ((IssueDiscrete) issues.get(i)).getNumberOfValues();
+		}
+	}
+
+	/**
+	 * Opens the store of a domain. A missing or unreadable file gives an empty store.
+	 * @param dir
+	 * 			the directory of the store
+	 * @param domain
+	 * 			the domain, with discrete issues only (see OutcomeEncoder.isDiscrete)
+	 * @return the store
+	 * @throws IllegalArgumentException if an issue is not discrete
+	 */
+	public static OpponentPriors open(File dir, Domain domain) {
+		if(!OutcomeEncoder.isDiscrete(domain)) {
+			throw new IllegalArgumentException("Priors need a domain with discrete issues only");
+		}
+		OpponentPriors priors = new OpponentPriors(dir, domain);
+		if(priors.file.isFile()) {
+			try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(priors.file)))) {
+				priors.read(in);
+			} catch (IOException e) {
+				EventLog.log(Level.ERROR, "OpponentPriors", "priors can not be read", e);
+				priors.entries.clear();
+			}
+		}
+		return priors;
+	}
+
+	private void read(DataInputStream in) throws IOException {
+		if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+			throw new IOException("Not a priors file of this version: " + file);
+		}
+		int count = in.readInt();
+		for(int e = 0; e < count; e++) {
+			Entry entry = new Entry();
+			entry.type = in.readUTF();
+			entry.lastUsed = in.readLong();
+			entry.sessions = in.readInt();
+			if(in.readInt() != valueCounts.length) {
+				throw new IOException("Priors of another domain: " + file);
+			}
+			entry.weights = new float[valueCounts.length];
+			entry.distributions = new float[valueCounts.length][];
+			for(int i = 0; i < valueCounts.length; i++) {
+				entry.weights[i] = in.readFloat();
+				if(in.readInt() != valueCounts[i]) {
+					throw new IOException("Priors of another domain: " + file);
+				}
+				entry.distributions[i] = new float[valueCounts[i]];
+				for(int v = 0; v < valueCounts[i]; v++) {
+					entry.distributions[i][v] = in.readFloat();
+				}
+			}
+			entries.put(entry.type, entry);
+		}
+	}
+
+	/**
+	 * Returns the prior of a type of opponent, decayed towards the uniform
+	 * model: the weights are moved towards equal weights, and the value
+	 * frequencies count as a number of offers.
+	 * @param type
+	 * 			the type of opponent, see typeOf
+	 * @param decay
+	 * 			the share of the stored weights in the prior, from 0 to 1
+	 * @param offers
+	 * 			the number of offers the stored frequencies count as, before the decay
+	 * @return the prior, or null if the type is unknown
+	 */
+	public Prior get(String type, double decay, double offers) {
+		Entry entry = entries.get(type);
+		if(entry == null) {
+			return null;
+		}
+		int n = valueCounts.length;
+		double[] weights = new double[n];
+		double[][] frequencies = new double[n][];
+		for(int i = 0; i < n; i++) {
+			weights[i] = (1 - decay) / n + decay * entry.weights[i];
+			frequencies[i] = new double[valueCounts[i]];
+			for(int v = 0; v < valueCounts[i]; v++) {
+				frequencies[i][v] = decay * offers * entry.distributions[i][v];
+			}
+		}
+		return new Prior(weights, frequencies);
+	}
+
+	/**
+	 * Stores what was learned about an opponent, replacing the earlier entry
+	 * of its type. The learned model already started from that entry.
+	 * @param type
+	 * 			the type of opponent, see typeOf
+	 * @param learned
+	 * 			the weights and value frequencies of the opponent
+	 */
+	public void put(String type, Prior learned) {
+		Entry entry = entries.get(type);
+		if(entry == null) {
+			entry = new Entry();
+			entry.type = type;
+			entries.put(type, entry);
+		}
+		entry.lastUsed = System.currentTimeMillis();
+		entry.sessions++;
+		int n = valueCounts.length;
+		entry.weights = new float[n];
+		entry.distributions = new float[n][];
+		for(int i = 0; i < n; i++) {
+			entry.weights[i] = (float) learned.weights[i];
+			double sum = 0;
+			for(double frequency : learned.frequencies[i]) {
+				sum += frequency;
+			}
+			entry.distributions[i] = new float[valueCounts[i]];
+			for(int v = 0; v < valueCounts[i]; v++) {
+				entry.distributions[i][v] = sum > 0 ? (float) (learned.frequencies[i][v] / sum) : 0f;
+			}
+		}
+	}
+
+	/**
+	 * Writes the store of this domain, keeping the MAX_TYPES most recently
+	 * used types, and removes the least recently written domains beyond MAX_DOMAINS.
+	 */
+	public void save() {
+		ArrayList<Entry> kept = new ArrayList<Entry>(entries.values());
+		Collections.sort(kept, (x, y) -> Long.compare(y.lastUsed, x.lastUsed));
+		if(kept.size() > MAX_TYPES) {
+			kept = new ArrayList<Entry>(kept.subList(0, MAX_TYPES));
+		}
+
+		dir.mkdirs();
+		File temp = new File(dir, file.getName() + ".tmp");
+		try {
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(kept.size());
+				for(Entry entry : kept) {
+					out.writeUTF(entry.type);
+					out.writeLong(entry.lastUsed);
+					out.writeInt(entry.sessions);
+					out.writeInt(valueCounts.length);
+					for(int i = 0; i < valueCounts.length; i++) {
+						out.writeFloat(entry.weights[i]);
+						out.writeInt(valueCounts[i]);
+						for(float share : entry.distributions[i]) {
+							out.writeFloat(share);
+						}
+					}
+				}
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			EventLog.log(Level.ERROR, "OpponentPriors", "priors can not be written", e);
+			return;
+		}
+
+		File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+		if(files != null && files.length > MAX_DOMAINS) {
+			Arrays.sort(files, (x, y) -> Long.compare(y.lastModified(), x.lastModified()));
+			for(int f = MAX_DOMAINS; f < files.length; f++) {
+				if(!files[f].equals(file) && !files[f].delete()) {
+					EventLog.log(Level.WARN, "OpponentPriors", "can not remove " + files[f]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of opponent types in the store.
+	 * @return the number of types
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Derives the type of an opponent from its identifier, by dropping the
+	 * number that tells apart the instances of the same agent.
+	 * @param agent
+	 * 			the identifier of the opponent
+	 * @return the type
+	 */
+	public static String typeOf(AgentID agent) {
+		return agent.toString().replaceAll("[@\\d\\s]+$", "");
+	}
+
+	/**
+	 * Computes a key of the domain over its issues and their values.
+	 */
+	private static long domainKey(Domain domain) {
+		CRC32 crc = new CRC32();
+		for(Issue issue : domain.getIssues()) {
+			crc.update(issue.getName().getBytes(StandardCharsets.UTF_8));
+			IssueDiscrete discrete = (IssueDiscrete) issue;
+			for(int v = 0; v < discrete.getNumberOfValues(); v++) {
+				crc.update(discrete.getValue(v).toString().getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return crc.getValue();
+	}
+}
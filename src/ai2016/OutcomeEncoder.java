@@ -0,0 +1,124 @@
+package ai2016;
+
+import java.util.HashMap;
+import java.util.List;
+
+import negotiator.Bid;
+import negotiator.Domain;
+import negotiator.issue.Issue;
+import negotiator.issue.IssueDiscrete;
+import negotiator.issue.Value;
+import negotiator.issue.ValueDiscrete;
+
+/**
+ * Encodes the bids of a discrete domain as a single number. The code is the
+ * mixed radix number formed by the value indices of the issues, in the order
+ * of the issues of the domain, with the last issue changing fastest. Codes
+ * run from 0 to getOutcomeCount() - 1.
+ */
+public class OutcomeEncoder {
+	private final Domain domain;
+	private final IssueDiscrete[] issues;
+	private final long count;
+
+	/**
+	 * Checks whether the bids of a domain can be encoded.
+	 * @param domain
+	 * 			the domain
+	 * @return true if all issues are discrete
+	 */
+	public static boolean isDiscrete(Domain domain) {
+		for(Issue issue : domain.getIssues()) {
+			if(!(issue instanceof IssueDiscrete)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Constructor of this class.
+	 * @param domain
+	 * 			a domain with discrete issues only, see isDiscrete
+	 * @throws IllegalArgumentException if an issue is not discrete
+	 */
+	public OutcomeEncoder(Domain domain) {
+		this.domain = domain;
+		List<Issue> domainIssues = domain.getIssues();
+		issues = new IssueDiscrete[domainIssues.size()];
+		long c = 1;
+		for(int i = 0; i < issues.length; i++) {
+			if(!(domainIssues.get(i) instanceof IssueDiscrete)) {
+				throw new IllegalArgumentException("Issue " + domainIssues.get(i).getName() + " is not discrete");
+			}
+			issues[i] = (IssueDiscrete) domainIssues.get(i);
+			int values = issues[i].getNumberOfValues();
+			c = c > Long.MAX_VALUE / values ? Long.MAX_VALUE : c * values;
+		}
+		count = c;
+	}
+
+	/**
+	 * Returns the number of outcomes of the domain.
+	 * @return the number of codes, Long.MAX_VALUE if the domain is too large to encode
+	 */
+	public long getOutcomeCount() {
+		return count;
+	}
+
+	/**
+	 * Encodes a bid.
+	 * @param bid
+	 * 			a bid of the domain
+	 * @return the code of the bid
+	 */
+	public long encode(Bid bid) {
+		long code = 0;
+		for(IssueDiscrete issue : issues) {
+			int index = issue.getValueIndex((ValueDiscrete) bid.getValue(issue.getNumber()));
+			code = code * issue.getNumberOfValues() + index;
+		}
+		return code;
+	}
+
+	/**
+	 * Decodes a bid.
+	 * @param code
+	 * 			the code of the bid
+	 * @return a new bid
+	 */
+	public Bid decode(long code) {
+		HashMap<Integer, Value> values = new HashMap<Integer, Value>();
+		long rest = code;
+		for(int i = issues.length - 1; i >= 0; i--) {
+			int radix = issues[i].getNumberOfValues();
+			values.put(issues[i].getNumber(), issues[i].getValue((int) (rest % radix)));
+			rest /= radix;
+		}
+		return new Bid(domain, values);
+	}
+
+	/**
+	 * Returns the value index of one issue of a code, without decoding the bid.
+	 * @param code
+	 * 			the code of the bid
+	 * @param position
+	 * 			position of the issue in the domain
+	 * @return the value index
+	 */
+	public int getValueIndex(long code, int position) {
+		long rest = code;
+		for(int i = issues.length - 1; i > position; i--) {
+			rest /= issues[i].getNumberOfValues();
+		}
+		return (int) (rest % issues[position].getNumberOfValues());
+	}
+
+	/**
+	 * Returns the issues in the order of the code.
+	 * @return the issues
+	 */
+	public IssueDiscrete[] getIssues() {
+		return issues;
+	}
+}
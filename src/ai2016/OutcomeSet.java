@@ -0,0 +1,227 @@
+package ai2016;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import negotiator.Bid;
+
+/**
+ * A set of outcomes, stored by their code (see OutcomeEncoder), with adds
+ * and membership checks in constant time. Small domains use a bitset over
+ * all codes, one bit per outcome, larger ones a hash set of the codes that
+ * were added. Domains with issues that are not discrete have no codes and
+ * keep a hash set of the bids. Membership may be checked from another thread
+ * than the adds; such a check may miss the outcomes added concurrently.
+ */
+public class OutcomeSet {
+	//domains up to this many outcomes use a bitset of at most 8 MB
+	private static final long BITSET_LIMIT = 1L << 26;
+	private static final long EMPTY = -1;
+
+	private final OutcomeEncoder encoder;
+	//bitset over all codes, null for large domains
+	private final long[] bits;
+	//open addressing hash set of codes, null for small domains
+	private volatile long[] table;
+	//the bids themselves, only for domains without an encoder
+	private final Set<Bid> bids;
+	private int size = 0;
+
+	/**
+	 * Constructor of this class.
+	 * @param encoder
+	 * 			the encoder of the domain, or null if the domain has issues that are not discrete
+	 */
+	public OutcomeSet(OutcomeEncoder encoder) {
+		this.encoder = encoder;
+		if(encoder == null) {
+			bits = null;
+			bids = ConcurrentHashMap.newKeySet();
+		} else if(encoder.getOutcomeCount() <= BITSET_LIMIT) {
+			bits = new long[(int) ((encoder.getOutcomeCount() + 63) / 64)];
+			bids = null;
+		} else {
+			bids = null;
+			bits = null;
+			long[] empty = new long[64];
+			Arrays.fill(empty, EMPTY);
+			table = empty;
+		}
+	}
+
+	/**
+	 * Adds an outcome.
+	 * @param bid
+	 * 			the outcome
+	 * @return true if the outcome was not in the set
+	 */
+	public boolean add(Bid bid) {
+		if(bids != null) {
+			boolean added = bids.add(bid);
+			if(added) {
+				size++;
+			}
+			return added;
+		}
+		return add(codeOf(bid));
+	}
+
+	/**
+	 * Adds an outcome by its code. Not for domains without an encoder.
+	 * @param code
+	 * 			the code of the outcome
+	 * @return true if the outcome was not in the set
+	 */
+	public boolean add(long code) {
+		boolean added;
+		if(bits != null) {
+			int word = (int) (code >>> 6);
+			long mask = 1L << code;
+			added = (bits[word] & mask) == 0;
+			bits[word] |= mask;
+		} else {
+			added = insert(code);
+		}
+		if(added) {
+			size++;
+		}
+		return added;
+	}
+
+	/**
+	 * Checks whether an outcome is in the set.
+	 * @param bid
+	 * 			the outcome
+	 * @return true if it was added
+	 */
+	public boolean contains(Bid bid) {
+		if(bids != null) {
+			return bids.contains(bid);
+		}
+		return contains(codeOf(bid));
+	}
+
+	/**
+	 * Checks whether an outcome is in the set by its code. Not for domains without an encoder.
+	 * @param code
+	 * 			the code of the outcome
+	 * @return true if it was added
+	 */
+	public boolean contains(long code) {
+		if(bits != null) {
+			return (bits[(int) (code >>> 6)] & (1L << code)) != 0;
+		}
+		long[] current = table;
+		return current[slotOf(current, code)] == code;
+	}
+
+	/**
+	 * Returns the number of outcomes in the set.
+	 * @return the number of outcomes
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns an estimate of the memory used by the set.
+	 * @return the number of bytes
+	 */
+	public long getFootprint() {
+		if(bids != null) {
+			return 64L * bids.size();
+		}
+		return 8L * (bits != null ? bits.length : table.length);
+	}
+
+	/**
+	 * Writes the codes of the outcomes in the set.
+	 * @param out
+	 * 			the output
+	 * @throws IOException if the output fails or the domain has no encoder
+	 */
+	public void write(DataOutput out) throws IOException {
+		if(bids != null) {
+			throw new IOException("Outcomes without codes can not be written");
+		}
+		out.writeInt(size);
+		if(bits != null) {
+			for(int word = 0; word < bits.length; word++) {
+				for(long rest = bits[word]; rest != 0; rest &= rest - 1) {
+					out.writeLong(64L * word + Long.numberOfTrailingZeros(rest));
+				}
+			}
+		} else {
+			for(long code : table) {
+				if(code != EMPTY) {
+					out.writeLong(code);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds the outcomes written by write, which must be of the same domain.
+	 * @param in
+	 * 			the input
+	 * @throws IOException if the input fails or the domain has no encoder
+	 */
+	public void read(DataInput in) throws IOException {
+		if(bids != null) {
+			throw new IOException("Outcomes without codes can not be read");
+		}
+		int count = in.readInt();
+		for(int i = 0; i < count; i++) {
+			long code = in.readLong();
+			if(bits != null && (code < 0 || code >= 64L * bits.length)) {
+				throw new IOException("Code out of range: " + code);
+			}
+			add(code);
+		}
+	}
+
+	/**
+	 * Codes wrap in domains of more than Long.MAX_VALUE outcomes, which makes
+	 * membership approximate there.
+	 */
+	private long codeOf(Bid bid) {
+		return encoder.encode(bid) & Long.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the slot of a code, or the empty slot where it belongs.
+	 */
+	private static int slotOf(long[] table, long code) {
+		int mask = table.length - 1;
+		int slot = (int) ((code * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+		while(table[slot] != EMPTY && table[slot] != code) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private boolean insert(long code) {
+		long[] current = table;
+		int slot = slotOf(current, code);
+		if(current[slot] == code) {
+			return false;
+		}
+		current[slot] = code;
+		//keep the table at most half full, and only publish the grown table once it is filled
+		if((size + 1) * 2 > current.length) {
+			long[] grown = new long[current.length * 2];
+			Arrays.fill(grown, EMPTY);
+			for(long c : current) {
+				if(c != EMPTY) {
+					grown[slotOf(grown, c)] = c;
+				}
+			}
+			table = grown;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,127 @@
+package ai2016;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import negotiator.Bid;
+
+/**
+ * A coarse index of the bids that have been evaluated so far while the
+ * outcome space is built in the background. The bids are grouped in buckets
+ * of equal utility width and every bucket keeps the first bids that fall
+ * into it, so the memory is bounded however large the domain is.
+ */
+public class PartialBidIndex implements BidSpace {
+	private final Bid[][] bids;
+	private final double[][] utilities;
+	private final int[] counts;
+	private int size = 0;
+
+	/**
+	 * Constructor of this class.
+	 * @param buckets
+	 * 			number of utility buckets between 0 and 1
+	 * @param bucketSize
+	 * 			maximum number of bids per bucket
+	 */
+	public PartialBidIndex(int buckets, int bucketSize) {
+		bids = new Bid[buckets][bucketSize];
+		utilities = new double[buckets][bucketSize];
+		counts = new int[buckets];
+	}
+
+	/**
+	 * Adds an evaluated bid, unless its bucket is full.
+	 * @param bid
+	 * 			the bid
+	 * @param utility
+	 * 			our utility of the bid
+	 */
+	public synchronized void add(Bid bid, double utility) {
+		int bucket = bucketOf(utility);
+		if(counts[bucket] < bids[bucket].length) {
+			bids[bucket][counts[bucket]] = bid;
+			utilities[bucket][counts[bucket]] = utility;
+			counts[bucket]++;
+			size++;
+		}
+	}
+
+	/**
+	 * Adds an evaluated bid by its code, unless its bucket is full. The bid
+	 * is only decoded if it is kept.
+	 * @param code
+	 * 			the code of the bid
+	 * @param utility
+	 * 			our utility of the bid
+	 * @param encoder
+	 * 			the encoder of the domain
+	 */
+	public synchronized void add(long code, double utility, OutcomeEncoder encoder) {
+		int bucket = bucketOf(utility);
+		if(counts[bucket] < bids[bucket].length) {
+			add(encoder.decode(code), utility);
+		}
+	}
+
+	private int bucketOf(double utility) {
+		return Math.max(0, Math.min(counts.length - 1, (int) (utility * counts.length)));
+	}
+
+	@Override
+	public synchronized ArrayList<Bid> getBidsBetween(double lower, double upper) {
+		ArrayList<Bid> result = new ArrayList<Bid>();
+		for(int b = bucketOf(lower); b <= bucketOf(upper); b++) {
+			for(int i = 0; i < counts[b]; i++) {
+				if(utilities[b][i] >= lower && utilities[b][i] <= upper) {
+					result.add(bids[b][i]);
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public synchronized Bid getRandomBid(double lower, double upper, Random random) {
+		//count the bids in the range, then walk to the chosen one
+		int matching = 0;
+		for(int b = bucketOf(lower); b <= bucketOf(upper); b++) {
+			for(int i = 0; i < counts[b]; i++) {
+				if(utilities[b][i] >= lower && utilities[b][i] <= upper) {
+					matching++;
+				}
+			}
+		}
+		if(matching == 0) {
+			return null;
+		}
+		int chosen = random.nextInt(matching);
+		for(int b = bucketOf(lower); b <= bucketOf(upper); b++) {
+			for(int i = 0; i < counts[b]; i++) {
+				if(utilities[b][i] >= lower && utilities[b][i] <= upper && chosen-- == 0) {
+					return bids[b][i];
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of bids in the index.
+	 * @return the number of bids
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	@Override
+	public long getFootprint() {
+		//a reference and a utility per slot
+		return (long) counts.length * bids[0].length * 16;
+	}
+
+	@Override
+	public String toString() {
+		return "partial index of " + size() + " bids";
+	}
+}
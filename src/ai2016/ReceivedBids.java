@@ -0,0 +1,126 @@
+package ai2016;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import negotiator.Bid;
+
+/**
+ * The outcomes offered by the opponents, stored by their code (see
+ * OutcomeEncoder). Whether an outcome has been offered before and which
+ * offer has the highest own utility are both answered in constant time.
+ * Small domains use a bitset over all codes, larger ones a hash set of the
+ * codes that were offered (see OutcomeSet).
+ */
+public class ReceivedBids {
+	private final OutcomeEncoder encoder;
+	private final OutcomeSet outcomes;
+
+	//the offer with the highest own utility
+	private Bid best = null;
+	private double bestUtility = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Constructor of this class.
+	 * @param encoder
+	 * 			the encoder of the domain, or null if the domain has issues that are
+	 * 			not discrete, which rules out write and read
+	 */
+	public ReceivedBids(OutcomeEncoder encoder) {
+		this.encoder = encoder;
+		this.outcomes = new OutcomeSet(encoder);
+	}
+
+	/**
+	 * Adds a received offer.
+	 * @param bid
+	 * 			the offer
+	 * @param utility
+	 * 			our utility of the offer
+	 * @return true if the outcome was not offered before
+	 */
+	public boolean add(Bid bid, double utility) {
+		if(utility > bestUtility) {
+			bestUtility = utility;
+			best = bid;
+		}
+		return outcomes.add(bid);
+	}
+
+	/**
+	 * Checks whether an outcome has been offered before.
+	 * @param bid
+	 * 			the outcome
+	 * @return true if an opponent offered it
+	 */
+	public boolean contains(Bid bid) {
+		return outcomes.contains(bid);
+	}
+
+	/**
+	 * Returns the received offer with the highest own utility.
+	 * @return the offer, or null if nothing was received
+	 */
+	public Bid getBest() {
+		return best;
+	}
+
+	/**
+	 * Returns the own utility of the best received offer.
+	 * @return the utility, negative infinity if nothing was received
+	 */
+	public double getBestUtility() {
+		return bestUtility;
+	}
+
+	/**
+	 * Returns the number of distinct outcomes that were offered.
+	 * @return the number of outcomes
+	 */
+	public int size() {
+		return outcomes.size();
+	}
+
+	/**
+	 * Returns an estimate of the memory used by the index.
+	 * @return the number of bytes
+	 */
+	public long getFootprint() {
+		return outcomes.getFootprint();
+	}
+
+	/**
+	 * Writes the codes of the received offers and the best offer, for a
+	 * checkpoint of the agent.
+	 * @param out
+	 * 			the output
+	 * @throws IOException if the output fails
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeBoolean(best != null);
+		if(best != null) {
+			out.writeLong(encoder.encode(best));
+			out.writeDouble(bestUtility);
+		}
+		outcomes.write(out);
+	}
+
+	/**
+	 * Adds the offers written by write, which must be of the same domain.
+	 * @param in
+	 * 			the input
+	 * @throws IOException if the input fails
+	 */
+	public void read(DataInput in) throws IOException {
+		if(in.readBoolean()) {
+			Bid bid = encoder.decode(in.readLong());
+			double utility = in.readDouble();
+			if(utility > bestUtility) {
+				bestUtility = utility;
+				best = bid;
+			}
+		}
+		outcomes.read(in);
+	}
+}
@@ -0,0 +1,205 @@
+package ai2016;
+
+import java.util.Arrays;
+import java.util.List;
+
+import negotiator.Bid;
+
+/**
+ * Caches the estimated utilities of the sorted bids per opponent, so that a
+ * selection only rescores the opponents whose model changed since the
+ * previous selection. Every opponent has a column of estimates that is valid
+ * for a range of bids and for one version of the model of that opponent.
+ * The SUM or MIN scores are aggregated from the columns in the same order as
+ * OpponentModel.getScore, so the selections are identical to a full scan.
+ */
+public class ScoreColumns {
+	private final List<Bid> bids;
+
+	//column of estimates per agent, in the order of the agents of the model
+	private double[][] columns = new double[0][];
+	private int[] hashes = new int[0];
+	private long[] versions = new long[0];
+	//the columns are valid for the bids from low to high
+	private int[] lows = new int[0];
+	private int[] highs = new int[0];
+	private int columnCount = 0;
+	//agents whose column is extended in the current refresh
+	private int[] stale = new int[0];
+
+	//the aggregated scores, valid for the bids from aggregateLow to aggregateHigh
+	private final double[] aggregate;
+	private BidStrategy aggregateStrategy = null;
+	private int aggregateLow = 0, aggregateHigh = 0;
+
+	//metrics
+	private long selections = 0, estimates = 0, rescoredColumns = 0;
+
+	/**
+	 * Constructor of this class.
+	 * @param bids
+	 * 			the bids that are selected from, which must not change
+	 */
+	public ScoreColumns(List<Bid> bids) {
+		this.bids = bids;
+		this.aggregate = new double[bids.size()];
+	}
+
+	/**
+	 * Selects the bid with the best SUM or MIN of the estimated utilities in
+	 * a range of bids, like OpponentModel.select.
+	 * @param model
+	 * 			the opponent model, which must not change during the selection
+	 * @param from
+	 * 			index of the first bid of the range
+	 * @param to
+	 * 			index after the last bid of the range
+	 * @param strategy
+	 * 			SUM or MIN
+	 * @param selection
+	 * 			receives the result
+	 * @return the selection
+	 */
+	public synchronized OpponentModel.Selection select(OpponentModel model, int from, int to, BidStrategy strategy, OpponentModel.Selection selection) {
+		selections++;
+		boolean changed = refresh(model, from, to);
+		//a range that does not touch the aggregated bids starts over, so the valid bids stay contiguous
+		if(changed || strategy != aggregateStrategy || from > aggregateHigh || to < aggregateLow) {
+			aggregateStrategy = strategy;
+			aggregateLow = aggregateHigh = from;
+		}
+		//aggregate the bids of the range that are not aggregated yet
+		if(from < aggregateLow) {
+			aggregate(from, Math.min(aggregateLow, to), strategy);
+		}
+		if(to > aggregateHigh) {
+			aggregate(Math.max(aggregateHigh, from), to, strategy);
+		}
+		aggregateLow = Math.min(aggregateLow, from);
+		aggregateHigh = Math.max(aggregateHigh, to);
+
+		selection.reset();
+		for(int j = from; j < to; j++) {
+			double score = aggregate[j];
+			selection.considerFresh(j, score, bids);
+			if(score >= selection.score) {
+				if(selection.index >= 0) {
+					selection.runnerUp = Math.max(selection.runnerUp, selection.score);
+				}
+				selection.score = score;
+				selection.index = j;
+			} else {
+				selection.runnerUp = Math.max(selection.runnerUp, score);
+			}
+		}
+		return selection;
+	}
+
+	/**
+	 * Brings the columns of all agents up to date for a range of bids.
+	 * @return true if the set of agents or the model of an agent changed
+	 */
+	private boolean refresh(OpponentModel model, int from, int to) {
+		int agents = model.getAgentCount();
+		boolean changed = agents != columnCount;
+		if(agents > columns.length) {
+			columns = Arrays.copyOf(columns, agents);
+			hashes = Arrays.copyOf(hashes, agents);
+			versions = Arrays.copyOf(versions, agents);
+			lows = Arrays.copyOf(lows, agents);
+			highs = Arrays.copyOf(highs, agents);
+			stale = new int[agents];
+		}
+		for(int a = columnCount; a < agents; a++) {
+			columns[a] = new double[bids.size()];
+			hashes[a] = model.getAgentHash(a);
+			versions[a] = model.getAgentVersion(a);
+			lows[a] = highs[a] = from;
+		}
+		columnCount = agents;
+
+		//find the agents whose column is out of date or too short
+		int staleCount = 0;
+		int low = from, high = to;
+		for(int a = 0; a < agents; a++) {
+			if(hashes[a] != model.getAgentHash(a) || versions[a] != model.getAgentVersion(a)) {
+				hashes[a] = model.getAgentHash(a);
+				versions[a] = model.getAgentVersion(a);
+				lows[a] = highs[a] = from;
+				changed = true;
+			} else if(from > highs[a] || to < lows[a]) {
+				lows[a] = highs[a] = from;
+			}
+			if(from < lows[a] || to > highs[a]) {
+				stale[staleCount++] = a;
+				low = Math.max(low, lows[a]);
+				high = Math.min(high, highs[a]);
+			}
+		}
+		if(staleCount == 0) {
+			return changed;
+		}
+
+		//one pass over the bids, so a bid is only decoded once for all stale agents
+		low = Math.min(Math.max(low, from), to);
+		high = Math.max(Math.min(high, to), low);
+		for(int j = from; j < to; j++) {
+			if(j == low) {
+				j = high;
+				if(j >= to) {
+					break;
+				}
+			}
+			Bid bid = null;
+			for(int s = 0; s < staleCount; s++) {
+				int a = stale[s];
+				if(j < lows[a] || j >= highs[a]) {
+					if(bid == null) {
+						bid = bids.get(j);
+					}
+					columns[a][j] = model.getAgentUtility(a, bid);
+					estimates++;
+				}
+			}
+		}
+		for(int s = 0; s < staleCount; s++) {
+			int a = stale[s];
+			lows[a] = Math.min(lows[a], from);
+			highs[a] = Math.max(highs[a], to);
+		}
+		rescoredColumns += staleCount;
+		return changed;
+	}
+
+	/**
+	 * Aggregates the columns of a range of bids, like OpponentModel.getScore.
+	 */
+	private void aggregate(int from, int to, BidStrategy strategy) {
+		for(int j = from; j < to; j++) {
+			double maxMin = 1;
+			double sum = 0;
+			for(int a = 0; a < columnCount; a++) {
+				double opponentUtility = columns[a][j];
+				sum += opponentUtility;
+				if(opponentUtility <= maxMin) {
+					maxMin = opponentUtility;
+				}
+			}
+			aggregate[j] = strategy == BidStrategy.SUM ? sum : maxMin;
+		}
+	}
+
+	/**
+	 * Returns an estimate of the memory used by the columns.
+	 * @return the number of bytes
+	 */
+	public synchronized long getFootprint() {
+		return 8L * aggregate.length * (columnCount + 1);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "score columns: " + selections + " selections, " + rescoredColumns + " columns extended, "
+				+ estimates + " estimates";
+	}
+}
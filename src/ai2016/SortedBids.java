@@ -0,0 +1,184 @@
+package ai2016;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import negotiator.Bid;
+
+/**
+ * All bids of the domain, sorted ascending on our own utility, so that the
+ * bids in a utility range can be found with a binary search. Subclasses
+ * decide how the bids themselves are stored.
+ */
+public abstract class SortedBids implements BidSpace {
+	protected final double[] utilities;
+
+	/**
+	 * Constructor of this class.
+	 * @param utilities
+	 * 			own utility of each bid, sorted ascending
+	 */
+	protected SortedBids(double[] utilities) {
+		this.utilities = utilities;
+	}
+
+	/**
+	 * Returns the bid at an index.
+	 * @param index
+	 * 			position in the sorted order
+	 * @return the bid
+	 */
+	public abstract Bid getBid(int index);
+
+	/**
+	 * Returns all bids as a list in sorted order.
+	 * @return the list, which may create the bids when they are accessed
+	 */
+	public abstract List<Bid> getBids();
+
+	/**
+	 * Returns the index of the first bid with a utility of at least the given value.
+	 * @param utility
+	 * 			the lower bound
+	 * @return the index, or size() if there is no such bid
+	 */
+	public int indexOf(double utility) {
+		int low = 0;
+		int high = utilities.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(utilities[mid] < utility) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the index after the last bid with a utility of at most the given value.
+	 * @param utility
+	 * 			the upper bound
+	 * @return the index
+	 */
+	public int indexAbove(double utility) {
+		int low = 0;
+		int high = utilities.length;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(utilities[mid] <= utility) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Gets all bids with a utility value between the lower and upper bound.
+	 * @param lower
+	 * 			lower bound of the range
+	 * @param upper
+	 * 			upper bound of the range
+	 * @return the list of bids in this range
+	 */
+	@Override
+	public ArrayList<Bid> getBidsBetween(double lower, double upper) {
+		int from = indexOf(lower);
+		int to = Math.max(from, indexAbove(upper));
+		return new ArrayList<Bid>(getBids().subList(from, to));
+	}
+
+	@Override
+	public Bid getRandomBid(double lower, double upper, Random random) {
+		int from = indexOf(lower);
+		int to = indexAbove(upper);
+		if(to <= from) {
+			return null;
+		}
+		return getBid(from + random.nextInt(to - from));
+	}
+
+	public double getUtility(int index) {
+		return utilities[index];
+	}
+
+	/**
+	 * Returns the outcome code of the bid at an index.
+	 * @param index
+	 * 			position in the sorted order
+	 * @param encoder
+	 * 			the encoder of the domain
+	 * @return the code
+	 */
+	public long getCode(int index, OutcomeEncoder encoder) {
+		return encoder.encode(getBid(index));
+	}
+
+	/**
+	 * Writes the sorted order as outcome codes, for a checkpoint of the agent.
+	 * The utilities are not written, because they are cheap to recompute.
+	 * @param out
+	 * 			the output
+	 * @param encoder
+	 * 			the encoder of the domain
+	 * @throws IOException if the output fails
+	 */
+	public void write(DataOutput out, OutcomeEncoder encoder) throws IOException {
+		out.writeInt(utilities.length);
+		for(int i = 0; i < utilities.length; i++) {
+			out.writeInt((int) getCode(i, encoder));
+		}
+	}
+
+	/**
+	 * Reads sorted bids written by write, without sorting them again.
+	 * @param in
+	 * 			the input
+	 * @param encoder
+	 * 			the encoder of the domain
+	 * @param evaluator
+	 * 			our own utility function
+	 * @param full
+	 * 			whether to store the bids as a list of bids, or else as codes
+	 * @return the sorted bids
+	 * @throws IOException if the input fails or does not hold the sorted outcomes of the domain
+	 */
+	public static SortedBids read(DataInput in, OutcomeEncoder encoder, UtilityEvaluator evaluator, boolean full) throws IOException {
+		int count = in.readInt();
+		if(count != encoder.getOutcomeCount()) {
+			throw new IOException("Expected " + encoder.getOutcomeCount() + " outcomes, found " + count);
+		}
+		double[] utilities = new double[count];
+		long[] codes = full ? null : new long[count];
+		ArrayList<Bid> bids = full ? new ArrayList<Bid>(count) : null;
+		for(int i = 0; i < count; i++) {
+			int code = in.readInt();
+			if(code < 0 || code >= count) {
+				throw new IOException("Code out of range: " + code);
+			}
+			Bid bid = full || !evaluator.isCompiled() ? encoder.decode(code) : null;
+			utilities[i] = bid == null ? evaluator.getUtility((long) code) : evaluator.getUtility(bid);
+			//a different utility function would break the order
+			if(i > 0 && utilities[i] < utilities[i - 1]) {
+				throw new IOException("Outcomes are not sorted on our utility");
+			}
+			if(full) {
+				bids.add(bid);
+			} else {
+				codes[i] = code;
+			}
+		}
+		return full ? new FullSortedBids(bids, utilities) : new EncodedSortedBids(encoder, codes, utilities);
+	}
+
+	public int size() {
+		return utilities.length;
+	}
+}
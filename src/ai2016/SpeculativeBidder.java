@@ -0,0 +1,236 @@
+package ai2016;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import ai2016.EventLog.Level;
+import negotiator.Bid;
+
+/**
+ * Computes the phase 2 bid of the next turn in the background, while the other
+ * parties are making their moves. The speculation is made on a snapshot of
+ * the opponent model and is only thrown away if the model changed enough to
+ * change its outcome.
+ */
+public class SpeculativeBidder {
+	//all bids sorted ascending on our own utility
+	private final SortedBids sortedBids;
+	//cached estimates of the sorted bids, null to score every bid
+	private final ScoreColumns columns;
+	//bids that we offered before and the score difference within which bids rotate, null to offer the best bid
+	private final OutcomeSet offered;
+	private final double tolerance;
+
+	private final ExecutorService executor;
+	private Future<Speculation> pending = null;
+
+	//statistics
+	private int hits = 0, patches = 0, misses = 0;
+
+	/**
+	 * A selection made ahead of time.
+	 */
+	private static class Speculation {
+		int from, to;
+		BidStrategy strategy;
+		OpponentModelPipeline.Snapshot snapshot;
+		OpponentModel.Selection selection;
+	}
+
+	/**
+	 * Constructor of this class.
+	 * @param sortedBids
+	 * 			all bids, sorted ascending on own utility
+	 */
+	public SpeculativeBidder(SortedBids sortedBids) {
+		this(sortedBids, null);
+	}
+
+	/**
+	 * Constructor of this class.
+	 * @param sortedBids
+	 * 			all bids, sorted ascending on own utility
+	 * @param columns
+	 * 			cached estimates of the sorted bids, or null
+	 */
+	public SpeculativeBidder(SortedBids sortedBids, ScoreColumns columns) {
+		this(sortedBids, columns, null, 0.0);
+	}
+
+	/**
+	 * Constructor of this class, which rotates among near-equivalent bids
+	 * instead of repeating an earlier offer (see Selection.getRotatedIndex).
+	 * @param sortedBids
+	 * 			all bids, sorted ascending on own utility
+	 * @param columns
+	 * 			cached estimates of the sorted bids, or null
+	 * @param offered
+	 * 			the bids that we offered before, or null to offer the best bid
+	 * @param tolerance
+	 * 			the largest difference in score that counts as equivalent
+	 */
+	public SpeculativeBidder(SortedBids sortedBids, ScoreColumns columns, OutcomeSet offered, double tolerance) {
+		this.sortedBids = sortedBids;
+		this.columns = columns;
+		this.offered = offered;
+		this.tolerance = tolerance;
+		this.executor = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "Group7-speculation");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Starts computing the selection for the next turn in the background.
+	 * @param snapshot
+	 * 			the current snapshot of the opponent model
+	 * @param lower
+	 * 			the projected lower bound of the next turn
+	 * @param upper
+	 * 			the upper bound of the next turn
+	 * @param strategy
+	 * 			the strategy of the next turn
+	 */
+	public void speculate(OpponentModelPipeline.Snapshot snapshot, double lower, double upper, BidStrategy strategy) {
+		if(pending != null) {
+			pending.cancel(false);
+		}
+		final Speculation speculation = new Speculation();
+		speculation.from = sortedBids.indexOf(lower);
+		speculation.to = sortedBids.indexAbove(upper);
+		speculation.strategy = strategy;
+		speculation.snapshot = snapshot;
+		pending = executor.submit(() -> {
+			speculation.selection = select(snapshot.model, speculation.from, speculation.to, strategy);
+			return speculation;
+		});
+	}
+
+	/**
+	 * Returns the selection for the current turn. Uses the speculation if it is
+	 * still valid, patches it if the range grew, and computes it from scratch otherwise.
+	 * @param snapshot
+	 * 			the current snapshot of the opponent model
+	 * @param lower
+	 * 			the lower bound of this turn
+	 * @param upper
+	 * 			the upper bound of this turn
+	 * @param strategy
+	 * 			the strategy of this turn
+	 * @return the selected bid, or null if there are no bids in the range
+	 */
+	public Bid take(OpponentModelPipeline.Snapshot snapshot, double lower, double upper, BidStrategy strategy) {
+		OpponentModel model = snapshot.model;
+		int from = sortedBids.indexOf(lower);
+		int to = sortedBids.indexAbove(upper);
+		Speculation speculation = collect();
+
+		//the speculation is useless if it was made for another strategy or range end
+		if(speculation == null || speculation.strategy != strategy || speculation.to != to || !stillValid(speculation, snapshot.driftSince(speculation.snapshot))) {
+			misses++;
+			return get(select(model, from, to, strategy));
+		}
+
+		OpponentModel.Selection selection = speculation.selection;
+		//less time passed than projected: the range shrank
+		if(from > speculation.from) {
+			if(selection.index < 0 || selection.index >= from) {
+				hits++;
+				//the fresh bid may have dropped out of the range
+				if(selection.freshIndex < from) {
+					selection.freshIndex = -1;
+				}
+				return get(selection);
+			}
+			misses++;
+			return get(select(model, from, to, strategy));
+		}
+		//more time passed than projected: only the extra bids need to be scored
+		if(from < speculation.from) {
+			patches++;
+			OpponentModel.Selection extra = select(model, from, speculation.from, strategy);
+			if(selection.index < 0) {
+				return get(extra);
+			}
+			if(extra.index >= 0 && extra.score > model.getScore(sortedBids.getBids().get(selection.index), strategy)) {
+				return get(extra);
+			}
+			if(extra.freshIndex >= 0 && extra.freshScore > selection.freshScore) {
+				selection.freshIndex = extra.freshIndex;
+				selection.freshScore = extra.freshScore;
+			}
+			return get(selection);
+		}
+		hits++;
+		return get(selection);
+	}
+
+	/**
+	 * Selects from a range of the sorted bids, from the cached estimates if there are any.
+	 */
+	private OpponentModel.Selection select(OpponentModel model, int from, int to, BidStrategy strategy) {
+		OpponentModel.Selection selection = new OpponentModel.Selection();
+		selection.offered = offered;
+		if(columns != null) {
+			return columns.select(model, from, to, strategy, selection);
+		}
+		return model.select(sortedBids.getBids(), from, to, strategy, selection);
+	}
+
+	/**
+	 * Checks whether the accumulated change of the model can not have changed the selection.
+	 */
+	private boolean stillValid(Speculation speculation, double drift) {
+		OpponentModel.Selection selection = speculation.selection;
+		//an empty range stays empty
+		if(drift == 0.0 || selection.index < 0) {
+			return true;
+		}
+		//no other bid can have overtaken the winner
+		return selection.score - selection.runnerUp > 2 * drift;
+	}
+
+	/**
+	 * Waits for the pending speculation, if any.
+	 */
+	private Speculation collect() {
+		if(pending == null) {
+			return null;
+		}
+		Future<Speculation> future = pending;
+		pending = null;
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			EventLog.log(Level.ERROR, "SpeculativeBidder", "speculation failed", e);
+			return null;
+		}
+	}
+
+	private Bid get(OpponentModel.Selection selection) {
+		int index = selection.getRotatedIndex(tolerance);
+		//the fresh bid of a speculation may have been offered after it was made
+		if(index != selection.index && offered != null && offered.contains(sortedBids.getBids().get(index))) {
+			index = selection.index;
+		}
+		return index >= 0 ? sortedBids.getBids().get(index) : null;
+	}
+
+	/**
+	 * Stops the background thread.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Override
+	public String toString() {
+		return "speculation hits: " + hits + ", patches: " + patches + ", misses: " + misses;
+	}
+}
@@ -0,0 +1,238 @@
+package ai2016;
+
+import ai2016.EventLog.Level;
+
+/**
+ * Decides for every received bid how the opponent model is updated, based on
+ * the measured cost of the updates and on how much they still change the
+ * model. The scheduler is in one of four modes:
+ * NORMAL applies every bid right away.
+ * BATCHING defers bids and applies them together, which normalizes each agent
+ * only once per batch, when the updates take too much of the time between
+ * two of our turns.
+ * THROTTLING also drops bids, keeping one in every few, when even batches
+ * are too expensive.
+ * FROZEN drops the bids once the model has converged, except for a regular
+ * probe that detects when the model starts moving again.
+ */
+public class UpdateScheduler {
+	/**
+	 * The mode of the scheduler.
+	 */
+	public enum Mode { NORMAL, BATCHING, THROTTLING, FROZEN }
+
+	/**
+	 * What to do with a received bid.
+	 */
+	public enum Decision { APPLY, DEFER, DROP }
+
+	//share of the time between two of our turns that the updates may take
+	private final double budgetShare;
+	//drift per bid below which the model counts as converged, after a minimum number of bids
+	private final double freezeDrift;
+	private final int minUpdates;
+	//every this many bids a frozen model is updated to check that it is still converged
+	private final int probeInterval;
+	//number of deferred bids that are applied together, and how much cheaper that makes them
+	private final int batchSize;
+	private final double batchGain;
+	//number of our turns after which deferred bids are applied even if the batch is not full
+	private final int maxDeferralTurns;
+	//weight of the newest measurement in the moving averages
+	private final double smoothing = 0.2;
+
+	//moving averages of the measurements
+	private double costPerBid = 0.0;
+	private double driftPerBid = Double.POSITIVE_INFINITY;
+	private double turnNanos = 0.0;
+	private double bidsPerTurn = 0.0;
+	private long lastTurn = -1;
+	private int bidsThisTurn = 0;
+
+	private Mode mode = Mode.NORMAL;
+	//in THROTTLING, one in every keepEvery bids is kept
+	private int keepEvery = 1;
+	private int sinceKept = 0;
+
+	//metrics
+	private long applied = 0, deferred = 0, dropped = 0, modeChanges = 0;
+
+	/**
+	 * Constructor of this class.
+	 * @param budgetShare
+	 * 			share of the time between two of our turns that the updates may take
+	 * @param freezeDrift
+	 * 			drift per bid below which the model counts as converged
+	 * @param minUpdates
+	 * 			number of bids to apply before the model may count as converged
+	 * @param probeInterval
+	 * 			a frozen model applies one in every this many bids
+	 * @param batchSize
+	 * 			number of deferred bids that are applied together
+	 * @param batchGain
+	 * 			how many times cheaper a bid is in a batch, at most
+	 * @param maxDeferralTurns
+	 * 			number of our turns after which deferred bids are applied even if the batch is not full
+	 */
+	public UpdateScheduler(double budgetShare, double freezeDrift, int minUpdates, int probeInterval, int batchSize, double batchGain,
+			int maxDeferralTurns) {
+		this.budgetShare = budgetShare;
+		this.freezeDrift = freezeDrift;
+		this.minUpdates = minUpdates;
+		this.probeInterval = probeInterval;
+		this.batchSize = batchSize;
+		this.batchGain = batchGain;
+		this.maxDeferralTurns = maxDeferralTurns;
+	}
+
+	/**
+	 * Marks the start of one of our turns, which measures the time between turns.
+	 * @param now
+	 * 			the current time from System.nanoTime()
+	 */
+	public synchronized void startTurn(long now) {
+		if(lastTurn >= 0) {
+			turnNanos = average(turnNanos, now - lastTurn);
+			bidsPerTurn = average(bidsPerTurn, bidsThisTurn);
+		}
+		lastTurn = now;
+		bidsThisTurn = 0;
+		evaluate();
+	}
+
+	/**
+	 * Decides what to do with a received bid.
+	 * @return the decision
+	 */
+	public synchronized Decision decide() {
+		bidsThisTurn++;
+		switch(mode) {
+		case FROZEN:
+			if(++sinceKept >= probeInterval) {
+				sinceKept = 0;
+				return Decision.APPLY;
+			}
+			dropped++;
+			return Decision.DROP;
+		case THROTTLING:
+			if(++sinceKept < keepEvery) {
+				dropped++;
+				return Decision.DROP;
+			}
+			sinceKept = 0;
+			deferred++;
+			return Decision.DEFER;
+		case BATCHING:
+			deferred++;
+			return Decision.DEFER;
+		default:
+			return Decision.APPLY;
+		}
+	}
+
+	/**
+	 * Checks whether the deferred bids should be applied.
+	 * @param pending
+	 * 			number of deferred bids
+	 * @return true if the batch is full
+	 */
+	public synchronized boolean isBatchFull(int pending) {
+		return pending >= batchSize;
+	}
+
+	/**
+	 * Checks whether deferred bids have waited too long, so that a long run of
+	 * deferred and dropped bids does not keep the model behind the bids it has seen.
+	 * @param turns
+	 * 			number of our turns that started since the oldest deferred bid
+	 * @return true if the deferred bids should be applied
+	 */
+	public synchronized boolean isDeferralExpired(int turns) {
+		return turns >= maxDeferralTurns;
+	}
+
+	/**
+	 * Records an applied update.
+	 * @param bids
+	 * 			number of bids in the update
+	 * @param nanos
+	 * 			duration of the update
+	 * @param drift
+	 * 			the drift bound of the update, infinite if a new agent appeared
+	 */
+	public synchronized void recordUpdate(int bids, long nanos, double drift) {
+		if(bids == 0) {
+			return;
+		}
+		applied += bids;
+		costPerBid = average(costPerBid, (double) nanos / bids);
+		if(Double.isInfinite(drift) || Double.isInfinite(driftPerBid)) {
+			//a new agent has no history yet
+			driftPerBid = Double.isInfinite(drift) ? Double.POSITIVE_INFINITY : drift / bids;
+		} else {
+			driftPerBid = average(driftPerBid, drift / bids);
+		}
+		//a probe that moved the model ends the freeze right away
+		if(mode == Mode.FROZEN && driftPerBid >= freezeDrift) {
+			evaluate();
+		}
+	}
+
+	/**
+	 * Chooses the mode from the current measurements.
+	 */
+	private void evaluate() {
+		Mode next;
+		if(applied >= minUpdates && driftPerBid < freezeDrift) {
+			next = Mode.FROZEN;
+		} else {
+			double budget = budgetShare * turnNanos;
+			double ratio = budget > 0 ? costPerBid * bidsPerTurn / budget : 0.0;
+			if(ratio <= 1.0) {
+				next = Mode.NORMAL;
+			} else if(ratio <= batchGain) {
+				next = Mode.BATCHING;
+			} else {
+				next = Mode.THROTTLING;
+				keepEvery = (int) Math.ceil(ratio / batchGain);
+			}
+		}
+		if(next != mode) {
+			modeChanges++;
+			sinceKept = 0;
+			EventLog.log(Level.INFO, "UpdateScheduler", "mode " + next + ", cost per bid (ns)", costPerBid);
+			mode = next;
+		}
+	}
+
+	private double average(double average, double value) {
+		return average == 0.0 ? value : (1 - smoothing) * average + smoothing * value;
+	}
+
+	public synchronized Mode getMode() {
+		return mode;
+	}
+
+	public synchronized long getApplied() {
+		return applied;
+	}
+
+	public synchronized long getDeferred() {
+		return deferred;
+	}
+
+	public synchronized long getDropped() {
+		return dropped;
+	}
+
+	public synchronized long getModeChanges() {
+		return modeChanges;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "update scheduler: " + mode + ", applied " + applied + ", deferred " + deferred
+				+ ", dropped " + dropped + ", " + modeChanges + " mode changes, "
+				+ Math.round(costPerBid) + " ns and " + driftPerBid + " drift per bid";
+	}
+}
@@ -0,0 +1,190 @@
+package ai2016;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import negotiator.Bid;
+import negotiator.Domain;
+import negotiator.issue.IssueDiscrete;
+import negotiator.issue.Value;
+import negotiator.issue.ValueDiscrete;
+
+/**
+ * Finds bids in a utility band without enumerating the outcome space. Because
+ * the utility space is additive, the utility of a bid is the sum of the
+ * contributions (weight times evaluation) of its values. A depth first search
+ * over the issues prunes every branch whose smallest or largest possible sum
+ * falls outside the band.
+ */
+public class UtilityBandSearch implements BidSpace {
+	private final Domain domain;
+	private final int[] issueNumbers;
+	//values and their contributions per issue, sorted descending on contribution
+	private final ValueDiscrete[][] values;
+	private final double[][] contributions;
+	//smallest and largest sum of the contributions of the issues from the index on
+	private final double[] minRest, maxRest;
+	//maximum number of bids returned by getBidsBetween
+	private final int limit;
+
+	/**
+	 * Constructor of this class.
+	 * @param evaluator
+	 * 			our compiled utility function
+	 * @param limit
+	 * 			maximum number of bids returned by getBidsBetween
+	 */
+	public UtilityBandSearch(UtilityEvaluator evaluator, int limit) {
+		if(!evaluator.isCompiled()) {
+			throw new IllegalArgumentException("Utility space is not additive over discrete issues");
+		}
+		this.domain = evaluator.getDomain();
+		this.limit = limit;
+
+		IssueDiscrete[] issues = evaluator.getIssues();
+		int n = issues.length;
+		issueNumbers = new int[n];
+		values = new ValueDiscrete[n][];
+		contributions = new double[n][];
+		minRest = new double[n + 1];
+		maxRest = new double[n + 1];
+
+		for(int i = 0; i < n; i++) {
+			IssueDiscrete issue = issues[i];
+			issueNumbers[i] = issue.getNumber();
+
+			//sort the values descending on contribution, so the search finds good bids first
+			final double[] unsorted = new double[issue.getNumberOfValues()];
+			Integer[] order = new Integer[unsorted.length];
+			for(int v = 0; v < unsorted.length; v++) {
+				unsorted[v] = evaluator.getContribution(i, v);
+				order[v] = v;
+			}
+			Arrays.sort(order, (x, y) -> Double.compare(unsorted[y], unsorted[x]));
+			values[i] = new ValueDiscrete[order.length];
+			contributions[i] = new double[order.length];
+			for(int v = 0; v < order.length; v++) {
+				values[i][v] = issue.getValue(order[v]);
+				contributions[i][v] = unsorted[order[v]];
+			}
+		}
+		for(int i = n - 1; i >= 0; i--) {
+			minRest[i] = minRest[i + 1] + contributions[i][contributions[i].length - 1];
+			maxRest[i] = maxRest[i + 1] + contributions[i][0];
+		}
+	}
+
+	/**
+	 * Gets bids with a utility value between the lower and upper bound, at
+	 * most limit of them. The bids are found in descending order of the
+	 * contribution of the first issues, not in order of utility.
+	 */
+	@Override
+	public ArrayList<Bid> getBidsBetween(double lower, double upper) {
+		ArrayList<Bid> result = new ArrayList<Bid>();
+		collect(0, 0.0, lower, upper, new int[issueNumbers.length], result);
+		return result;
+	}
+
+	/**
+	 * Depth first search that adds the bids of a branch to the result.
+	 * @return false if the limit was reached
+	 */
+	private boolean collect(int issue, double sum, double lower, double upper, int[] choice, ArrayList<Bid> result) {
+		if(issue == issueNumbers.length) {
+			result.add(toBid(choice));
+			return result.size() < limit;
+		}
+		for(int v = 0; v < contributions[issue].length; v++) {
+			double partial = sum + contributions[issue][v];
+			//the values are sorted descending: once the best case is too low, all next values are too
+			if(partial + maxRest[issue + 1] < lower) {
+				break;
+			}
+			if(partial + minRest[issue + 1] > upper) {
+				continue;
+			}
+			choice[issue] = v;
+			if(!collect(issue + 1, partial, lower, upper, choice, result)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Picks a random bid in the band. The search visits the values of every
+	 * issue in random order and backtracks out of empty branches, so it always
+	 * finds a bid if one exists. The bids are not drawn uniformly.
+	 */
+	@Override
+	public Bid getRandomBid(double lower, double upper, Random random) {
+		int[] choice = new int[issueNumbers.length];
+		if(sample(0, 0.0, lower, upper, choice, random)) {
+			return toBid(choice);
+		}
+		return null;
+	}
+
+	private boolean sample(int issue, double sum, double lower, double upper, int[] choice, Random random) {
+		if(issue == issueNumbers.length) {
+			return true;
+		}
+		//visit the values in a random order
+		int count = contributions[issue].length;
+		int[] order = new int[count];
+		for(int v = 0; v < count; v++) {
+			order[v] = v;
+		}
+		for(int v = count - 1; v > 0; v--) {
+			int j = random.nextInt(v + 1);
+			int swap = order[v];
+			order[v] = order[j];
+			order[j] = swap;
+		}
+		for(int v : order) {
+			double partial = sum + contributions[issue][v];
+			if(partial + maxRest[issue + 1] < lower || partial + minRest[issue + 1] > upper) {
+				continue;
+			}
+			choice[issue] = v;
+			if(sample(issue + 1, partial, lower, upper, choice, random)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the utility of the best bid of the domain.
+	 * @return the largest possible sum of contributions
+	 */
+	public double getMaxUtility() {
+		return maxRest[0];
+	}
+
+	@Override
+	public long getFootprint() {
+		//a value reference and a contribution per value
+		long footprint = 0;
+		for(double[] issue : contributions) {
+			footprint += 16L * issue.length;
+		}
+		return footprint;
+	}
+
+	@Override
+	public String toString() {
+		return "utility band search";
+	}
+
+	private Bid toBid(int[] choice) {
+		HashMap<Integer, Value> bidValues = new HashMap<Integer, Value>();
+		for(int i = 0; i < choice.length; i++) {
+			bidValues.put(issueNumbers[i], values[i][choice[i]]);
+		}
+		return new Bid(domain, bidValues);
+	}
+}
@@ -0,0 +1,240 @@
+package ai2016;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import ai2016.EventLog.Level;
+import negotiator.Bid;
+import negotiator.Domain;
+import negotiator.issue.Issue;
+import negotiator.issue.IssueDiscrete;
+import negotiator.issue.Value;
+import negotiator.utility.AbstractUtilitySpace;
+import negotiator.utility.AdditiveUtilitySpace;
+import negotiator.utility.EvaluatorDiscrete;
+
+/**
+ * Our own utility function, compiled into a table of contributions (weight
+ * times evaluation) per issue and value index, so that the utility of a bid
+ * is a sum of table lookups instead of a walk over the evaluators of the
+ * utility space. The contributions are added in the order of the issues of
+ * the domain, like the utility space does, so the utilities are identical.
+ * Utility spaces that are not additive or have issues that are not discrete
+ * can not be compiled and are asked directly.
+ */
+public class UtilityEvaluator {
+	//number of bids on which the compiled utilities are checked against the utility space
+	private static final int CHECKED_BIDS = 16;
+
+	private final AbstractUtilitySpace utilSpace;
+	private final Domain domain;
+	//null if the utility space could not be compiled
+	private IssueDiscrete[] issues;
+	private ArrayList<HashMap<Value, Integer>> valueIndices;
+	private double[][] contributions;
+	//number of outcomes per value of each issue in the order of OutcomeEncoder
+	private long[] places;
+
+	/**
+	 * Compiles a utility space.
+	 * @param utilSpace
+	 * 			our own utility space
+	 */
+	public UtilityEvaluator(AbstractUtilitySpace utilSpace) {
+		this.utilSpace = utilSpace;
+		this.domain = utilSpace.getDomain();
+		if(utilSpace instanceof AdditiveUtilitySpace && OutcomeEncoder.isDiscrete(domain)) {
+			try {
+				compile((AdditiveUtilitySpace) utilSpace);
+			} catch (Exception e) {
+				EventLog.log(Level.ERROR, "UtilityEvaluator", "utility space can not be compiled", e);
+				issues = null;
+			}
+		}
+	}
+
+	private void compile(AdditiveUtilitySpace utilSpace) throws Exception {
+		List<Issue> domainIssues = domain.getIssues();
+		int n = domainIssues.size();
+		IssueDiscrete[] compiled = new IssueDiscrete[n];
+		valueIndices = new ArrayList<HashMap<Value, Integer>>(n);
+		contributions = new double[n][];
+		places = new long[n];
+		for(int i = 0; i < n; i++) {
+			compiled[i] = (IssueDiscrete) domainIssues.get(i);
+			EvaluatorDiscrete evaluator = (EvaluatorDiscrete) utilSpace.getEvaluator(compiled[i].getNumber());
+			double weight = utilSpace.getWeight(compiled[i].getNumber());
+			HashMap<Value, Integer> indices = new HashMap<Value, Integer>();
+			contributions[i] = new double[compiled[i].getNumberOfValues()];
+			for(int v = 0; v < contributions[i].length; v++) {
+				indices.put(compiled[i].getValue(v), v);
+				contributions[i][v] = weight * evaluator.getEvaluation(compiled[i].getValue(v));
+			}
+			valueIndices.add(indices);
+		}
+		long place = 1;
+		for(int i = n - 1; i >= 0; i--) {
+			places[i] = place;
+			int values = compiled[i].getNumberOfValues();
+			place = place > Long.MAX_VALUE / values ? Long.MAX_VALUE : place * values;
+		}
+
+		//compare with the utility space on a few bids, and do not use the tables if they differ
+		for(int b = 0; b < CHECKED_BIDS; b++) {
+			Bid bid = sampleBid(compiled, b);
+			double utility = sum(compiled, bid);
+			if(utility != utilSpace.getUtility(bid)) {
+				throw new IllegalStateException("compiled utility " + utility + " differs for " + bid);
+			}
+		}
+		issues = compiled;
+	}
+
+	/**
+	 * Builds the b-th of a fixed spread of bids over the values of the issues.
+	 */
+	private Bid sampleBid(IssueDiscrete[] issues, int b) {
+		HashMap<Integer, Value> values = new HashMap<Integer, Value>();
+		for(int i = 0; i < issues.length; i++) {
+			values.put(issues[i].getNumber(), issues[i].getValue((b * (i + 1)) % issues[i].getNumberOfValues()));
+		}
+		return new Bid(domain, values);
+	}
+
+	/**
+	 * Computes a fingerprint of the domain and of our utility function, which
+	 * tells whether a checkpoint was written for the same preferences. Of
+	 * issues that are not discrete only the number and name are included.
+	 * @return a checksum over the issues, the values and the utilities
+	 */
+	public long getFingerprint() {
+		CRC32 crc = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		List<Issue> domainIssues = domain.getIssues();
+		IssueDiscrete[] discrete = new IssueDiscrete[domainIssues.size()];
+		boolean sampled = true;
+		for(int i = 0; i < discrete.length; i++) {
+			Issue issue = domainIssues.get(i);
+			crc.update(buffer.putInt(0, issue.getNumber()).array(), 0, 4);
+			if(!(issue instanceof IssueDiscrete)) {
+				crc.update(issue.getName().getBytes(StandardCharsets.UTF_8));
+				sampled = false;
+				continue;
+			}
+			discrete[i] = (IssueDiscrete) issue;
+			for(int v = 0; v < discrete[i].getNumberOfValues(); v++) {
+				crc.update(discrete[i].getValue(v).toString().getBytes(StandardCharsets.UTF_8));
+				if(issues != null) {
+					crc.update(buffer.putDouble(0, contributions[i][v]).array());
+				}
+			}
+		}
+		//the sample bids are only defined over discrete issues
+		for(int b = 0; sampled && b < CHECKED_BIDS; b++) {
+			crc.update(buffer.putDouble(0, getUtility(sampleBid(discrete, b))).array());
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Checks whether the utility space was compiled.
+	 * @return false if the utility space is asked for every utility
+	 */
+	public boolean isCompiled() {
+		return issues != null;
+	}
+
+	/**
+	 * Computes our utility of a bid.
+	 * @param bid
+	 * 			the bid
+	 * @return the utility, 0 if it can not be computed
+	 */
+	public double getUtility(Bid bid) {
+		if(issues != null) {
+			double utility = sum(issues, bid);
+			if(!Double.isNaN(utility)) {
+				return utility;
+			}
+		}
+		return askUtilitySpace(bid);
+	}
+
+	/**
+	 * Sums the contributions of the values of a bid.
+	 * @return the utility, NaN if a value is not in the tables
+	 */
+	private double sum(IssueDiscrete[] issues, Bid bid) {
+		double utility = 0.0;
+		for(int i = 0; i < issues.length; i++) {
+			Integer v = valueIndices.get(i).get(bid.getValue(issues[i].getNumber()));
+			if(v == null) {
+				return Double.NaN;
+			}
+			utility += contributions[i][v];
+		}
+		return utility;
+	}
+
+	/**
+	 * Computes our utility of an outcome code (see OutcomeEncoder), without
+	 * decoding the bid. Only for compiled utility spaces.
+	 * @param code
+	 * 			the code of the bid
+	 * @return the utility
+	 */
+	public double getUtility(long code) {
+		double utility = 0.0;
+		for(int i = 0; i < issues.length; i++) {
+			utility += contributions[i][(int) ((code / places[i]) % contributions[i].length)];
+		}
+		return utility;
+	}
+
+	private double askUtilitySpace(Bid bid) {
+		try {
+			return utilSpace.getUtility(bid);
+		} catch (Exception e) {
+			EventLog.log(Level.ERROR, "UtilityEvaluator", "utility can not be computed", e);
+			return 0.0;
+		}
+	}
+
+	/**
+	 * Returns the contribution of a single value to our utility. Only for
+	 * compiled utility spaces.
+	 * @param issue
+	 * 			position of the issue in the domain
+	 * @param value
+	 * 			index of the value in the issue
+	 * @return the weight of the issue times the evaluation of the value
+	 */
+	public double getContribution(int issue, int value) {
+		return contributions[issue][value];
+	}
+
+	/**
+	 * Returns the issues of the domain, in the order of the tables.
+	 * @return the issues, null if the utility space was not compiled
+	 */
+	public IssueDiscrete[] getIssues() {
+		return issues;
+	}
+
+	/**
+	 * Returns the domain of the utility space.
+	 * @return the domain
+	 */
+	public Domain getDomain() {
+		return domain;
+	}
+
+	@Override
+	public String toString() {
+		return issues != null ? "compiled utility of " + issues.length + " issues" : "uncompiled utility space";
+	}
+}
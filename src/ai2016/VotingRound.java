@@ -0,0 +1,142 @@
+package ai2016;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import negotiator.AgentID;
+import negotiator.Bid;
+
+/**
+ * The offers of a single round of the voting protocols
+ * (AlternatingMultipleOffersProtocol and AlternatingMajorityConsensusProtocol).
+ * In these protocols every party first places an offer, after which every
+ * party votes on each offer in the order in which they were placed. The
+ * offers are buffered until the first vote, so that they can be scored in
+ * one batch. Until then it is not known whether they are offers of other
+ * parties at all, as a mediator sends its proposals the same way.
+ */
+public class VotingRound {
+	private final ArrayList<Bid> offers = new ArrayList<Bid>();
+	//the party of each offer, null for the offer of the agent itself
+	private final ArrayList<AgentID> senders = new ArrayList<AgentID>();
+	private Bid ownOffer;
+	private boolean[] votes;
+	private int nextVote;
+
+	/**
+	 * Adds the offer of another party.
+	 * @param sender
+	 * 			the party
+	 * @param bid
+	 * 			the offer
+	 */
+	public void addOffer(AgentID sender, Bid bid) {
+		startIfVoted();
+		offers.add(bid);
+		senders.add(sender);
+	}
+
+	/**
+	 * Adds the offer of the agent itself.
+	 * @param bid
+	 * 			the offer
+	 */
+	public void addOwnOffer(Bid bid) {
+		startIfVoted();
+		offers.add(bid);
+		senders.add(null);
+		ownOffer = bid;
+	}
+
+	/**
+	 * A new offer after the votes means that the next round has started.
+	 */
+	private void startIfVoted() {
+		if(votes != null) {
+			offers.clear();
+			senders.clear();
+			ownOffer = null;
+			votes = null;
+			nextVote = 0;
+		}
+	}
+
+	/**
+	 * Checks whether the offers of this round have been scored.
+	 * @return true if the votes are known
+	 */
+	public boolean isEvaluated() {
+		return votes != null;
+	}
+
+	/**
+	 * Returns the offers of this round in the order of voting.
+	 * @return the offers
+	 */
+	public List<Bid> getOffers() {
+		return offers;
+	}
+
+	/**
+	 * Returns the offer of the agent itself in this round.
+	 * @return the offer, or null if the agent did not offer
+	 */
+	public Bid getOwnOffer() {
+		return ownOffer;
+	}
+
+	/**
+	 * Returns the party of each offer of this round.
+	 * @return the parties in the order of the offers, null for the offer of the agent itself
+	 */
+	public List<AgentID> getSenders() {
+		return senders;
+	}
+
+	/**
+	 * Returns the latest offer of another party in this round.
+	 * @return the offer, or null if there is none
+	 */
+	public Bid getLastReceivedOffer() {
+		for(int i = offers.size() - 1; i >= 0; i--) {
+			if(senders.get(i) != null) {
+				return offers.get(i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Sets the votes on the offers of this round.
+	 * @param votes
+	 * 			for every offer, whether to accept it
+	 */
+	public void setVotes(boolean[] votes) {
+		this.votes = votes;
+		nextVote = 0;
+	}
+
+	/**
+	 * Checks whether there is an offer left to vote on.
+	 * @return true if there is a next vote
+	 */
+	public boolean hasNextVote() {
+		return votes != null && nextVote < votes.length;
+	}
+
+	/**
+	 * Returns the offer of the next vote.
+	 * @return the offer
+	 */
+	public Bid getNextOffer() {
+		return offers.get(nextVote);
+	}
+
+	/**
+	 * Takes the next vote.
+	 * @return true to accept the offer
+	 */
+	public boolean takeNextVote() {
+		return votes[nextVote++];
+	}
+}
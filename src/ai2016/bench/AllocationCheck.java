@@ -0,0 +1,168 @@
+package ai2016.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import negotiator.AgentID;
+import negotiator.Bid;
+import negotiator.Domain;
+import negotiator.actions.Accept;
+import negotiator.actions.Action;
+import negotiator.actions.Offer;
+import negotiator.utility.AdditiveUtilitySpace;
+
+/**
+ * Measures the memory that Group7 allocates per turn on the negotiation
+ * thread in the steady state, after the opponents are known and the agent is
+ * past the turning point. A turn is a chooseAction followed by a
+ * receiveMessage of every opponent (see ScriptedSession).
+ *
+ * The allocation-free turn is a property of deterministic mode only, where
+ * the opponent model is updated on the negotiation thread; only that mode is
+ * checked. The default mode is measured for reference: it allocates an
+ * observation and a queue node per received bid and a future per
+ * speculation on the negotiation thread, and a model copy per published
+ * snapshot on the worker, which is not counted here.
+ *
+ * Usage: AllocationCheck domain-file profile-file [limit] [sessions] [rounds]
+ * The exit code is 1 if a turn in deterministic mode allocates more than
+ * limit bytes on average. The default limit is the measured size of the
+ * returned Offer, the only object of a steady turn when the bids are stored
+ * as objects. Domains whose bids are stored as codes (see EncodedSortedBids)
+ * decode the offered bid, and need a limit that also covers a Bid.
+ */
+public class AllocationCheck {
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Totals of the measured turns.
+	 */
+	static class Measurement {
+		long bytes;
+		int turns;
+	}
+
+	//keeps the measured offers reachable, so that they are not optimized away
+	private static volatile Object sink;
+
+	private static long allocated() {
+		return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * Measures the bytes of the Offer that a turn returns.
+	 */
+	private static long offerBytes(Domain domain, long overhead) {
+		AgentID agent = new AgentID("Group7");
+		Offer[] offers = new Offer[1000];
+		long least = Long.MAX_VALUE;
+		Random random = new Random(0);
+		for(int i = 0; i < offers.length; i++) {
+			Bid bid = ScriptedSession.randomBid(domain, random);
+			long start = allocated();
+			offers[i] = new Offer(agent, bid);
+			least = Math.min(least, allocated() - start - overhead);
+		}
+		sink = offers;
+		return least;
+	}
+
+	/**
+	 * Plays a single session and measures the turns after the first quarter.
+	 * @param domain
+	 * 			the domain
+	 * @param utilSpace
+	 * 			the profile of Group7
+	 * @param seed
+	 * 			the session seed
+	 * @param rounds
+	 * 			number of rounds
+	 * @param overhead
+	 * 			bytes allocated by the measurement itself
+	 * @param measurement
+	 * 			the totals to add to
+	 */
+	static void play(Domain domain, AdditiveUtilitySpace utilSpace, long seed, int rounds, final long overhead,
+			final Measurement measurement) {
+		ScriptedSession session = new ScriptedSession(domain, utilSpace, seed, seed, rounds);
+		session.init();
+		session.play(new ScriptedSession.Rounds() {
+			private long start;
+
+			@Override
+			public void start(int round) {
+				start = allocated();
+			}
+
+			@Override
+			public void end(int round, Action action) {
+				long bytes = allocated() - start - overhead;
+				//an accepting turn ends the session and is not a steady turn
+				if(round >= rounds / 4 && !(action instanceof Accept)) {
+					measurement.bytes += bytes;
+					measurement.turns++;
+				}
+			}
+		});
+	}
+
+	/**
+	 * Measures all sessions in one mode, after playing them once to warm up the JIT.
+	 * @return the average number of bytes per steady turn
+	 */
+	private static double measure(Domain domain, AdditiveUtilitySpace utilSpace, boolean deterministic,
+			int sessions, int rounds, long overhead) {
+		System.setProperty("ai2016.deterministic", Boolean.toString(deterministic));
+		Measurement warmup = new Measurement();
+		for(int seed = 0; seed < sessions; seed++) {
+			play(domain, utilSpace, seed, rounds, overhead, warmup);
+		}
+		Measurement measurement = new Measurement();
+		for(int seed = 0; seed < sessions; seed++) {
+			play(domain, utilSpace, seed, rounds, overhead, measurement);
+		}
+		double perTurn = measurement.turns == 0 ? 0 : (double) measurement.bytes / measurement.turns;
+		System.out.println((deterministic ? "deterministic" : "default") + " mode: " + measurement.turns
+				+ " steady turns, " + Math.round(perTurn) + " bytes/turn");
+		return perTurn;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 2) {
+			System.err.println("Usage: AllocationCheck domain-file profile-file [limit] [sessions] [rounds]");
+			System.exit(2);
+		}
+		long limit = args.length > 2 ? Long.parseLong(args[2]) : -1;
+		int sessions = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		int rounds = args.length > 4 ? Integer.parseInt(args[4]) : 200;
+		if(!THREADS.isThreadAllocatedMemorySupported()) {
+			System.err.println("Allocation measurement is not supported by this JVM");
+			System.exit(2);
+		}
+		THREADS.setThreadAllocatedMemoryEnabled(true);
+
+		Domain domain = new Domain(args[0]);
+		AdditiveUtilitySpace utilSpace = new AdditiveUtilitySpace(domain, args[1]);
+
+		//bytes allocated by two consecutive measurements
+		long overhead = Long.MAX_VALUE;
+		for(int i = 0; i < 1000; i++) {
+			long start = allocated();
+			overhead = Math.min(overhead, allocated() - start);
+		}
+
+		if(limit < 0) {
+			limit = offerBytes(domain, overhead);
+		}
+
+		//the opponent model is only free of copies when it is updated synchronously
+		double perTurn = measure(domain, utilSpace, true, sessions, rounds, overhead);
+		//the configuration that ships, for reference
+		measure(domain, utilSpace, false, sessions, rounds, overhead);
+		System.out.println("limit " + limit + " bytes/turn in deterministic mode");
+		if(perTurn > limit) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package ai2016.bench;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A compact columnar file for sweep results. The file starts with a header
+ * with the column names, followed by blocks of rows. Within a block every
+ * column is stored contiguously as raw doubles, so analysis tools can read a
+ * single column without parsing text.
+ *
+ * Layout: magic, column count, column names, then per block the row count
+ * followed by column count x row count doubles.
+ */
+public class ColumnarResultFile {
+	private static final int MAGIC = 0x47375257;
+	private static final int BLOCK_ROWS = 4096;
+
+	/**
+	 * Streams rows into a file. Rows are buffered per column and written as
+	 * a block when the buffer is full. Appending is thread safe.
+	 */
+	public static class Writer implements Closeable {
+		private final DataOutputStream out;
+		private final double[][] columns;
+		private int rows = 0;
+
+		/**
+		 * Creates the file and writes the header.
+		 * @param file
+		 * 			file to write to
+		 * @param names
+		 * 			names of the columns
+		 * @throws IOException
+		 */
+		public Writer(File file, List<String> names) throws IOException {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(names.size());
+			for(String name : names) {
+				out.writeUTF(name);
+			}
+			columns = new double[names.size()][BLOCK_ROWS];
+		}
+
+		/**
+		 * Appends a row.
+		 * @param row
+		 * 			one value for each column
+		 * @throws IOException
+		 */
+		public synchronized void append(double... row) throws IOException {
+			for(int c = 0; c < columns.length; c++) {
+				columns[c][rows] = row[c];
+			}
+			rows++;
+			if(rows == BLOCK_ROWS) {
+				flushBlock();
+			}
+		}
+
+		private void flushBlock() throws IOException {
+			if(rows == 0) {
+				return;
+			}
+			out.writeInt(rows);
+			for(double[] column : columns) {
+				for(int r = 0; r < rows; r++) {
+					out.writeDouble(column[r]);
+				}
+			}
+			rows = 0;
+		}
+
+		@Override
+		public synchronized void close() throws IOException {
+			flushBlock();
+			out.close();
+		}
+	}
+
+	/**
+	 * Reads a complete file back into memory.
+	 */
+	public static class Reader {
+		private final List<String> names = new ArrayList<String>();
+		private final double[][] columns;
+
+		/**
+		 * Reads the file.
+		 * @param file
+		 * 			file written by a Writer
+		 * @throws IOException
+		 */
+		public Reader(File file) throws IOException {
+			try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+				if(in.readInt() != MAGIC) {
+					throw new IOException(file + " is not a columnar result file");
+				}
+				int count = in.readInt();
+				for(int c = 0; c < count; c++) {
+					names.add(in.readUTF());
+				}
+
+				//read all blocks and glue them together per column
+				List<double[][]> blocks = new ArrayList<double[][]>();
+				int total = 0;
+				while(true) {
+					int rows;
+					try {
+						rows = in.readInt();
+					} catch(EOFException e) {
+						break;
+					}
+					double[][] block = new double[count][rows];
+					for(int c = 0; c < count; c++) {
+						for(int r = 0; r < rows; r++) {
+							block[c][r] = in.readDouble();
+						}
+					}
+					blocks.add(block);
+					total += rows;
+				}
+				columns = new double[count][total];
+				int offset = 0;
+				for(double[][] block : blocks) {
+					for(int c = 0; c < count; c++) {
+						System.arraycopy(block[c], 0, columns[c], offset, block[c].length);
+					}
+					offset += block[0].length;
+				}
+			}
+		}
+
+		public List<String> getNames() {
+			return names;
+		}
+
+		/**
+		 * Returns all values of a column.
+		 * @param name
+		 * 			name of the column
+		 * @return the values, one per row
+		 */
+		public double[] getColumn(String name) {
+			int index = names.indexOf(name);
+			if(index < 0) {
+				throw new IllegalArgumentException("Unknown column " + name);
+			}
+			return columns[index];
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package ai2016.bench;
+
+import java.util.Random;
+
+import ai2016.OpponentModel;
+import ai2016.OpponentModelPipeline;
+import ai2016.UpdateScheduler;
+import negotiator.Bid;
+import negotiator.Domain;
+import negotiator.utility.AdditiveUtilitySpace;
+
+/**
+ * Checks that bids deferred by the update scheduler reach the opponent model
+ * within the maximum deferral, even under a run of deferrals that never fills
+ * a batch. The scheduler is forced to defer every bid and the pipeline is
+ * synchronous, so the check does not depend on timing.
+ *
+ * Usage: DeferralCheck domain-file profile-file [turns] [max-deferral-turns]
+ * The exit code is 1 if a deferred bid waited longer than the maximum
+ * deferral or was never applied.
+ */
+public class DeferralCheck {
+	//hashes of the agents whose bids are deferred
+	private static final int[] AGENTS = { "Opponent A".hashCode(), "Opponent B".hashCode() };
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 2) {
+			System.err.println("Usage: DeferralCheck domain-file profile-file [turns] [max-deferral-turns]");
+			System.exit(2);
+		}
+		int turns = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		int maxDeferral = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+
+		Domain domain = new Domain(args[0]);
+		AdditiveUtilitySpace utilSpace = new AdditiveUtilitySpace(domain, args[1]);
+		//a batch that never fills, so only the deferral bound applies the bids
+		UpdateScheduler scheduler = new UpdateScheduler(0.1, 1e-4, 50, 10, Integer.MAX_VALUE, 4.0, maxDeferral) {
+			@Override
+			public synchronized Decision decide() {
+				return Decision.DEFER;
+			}
+		};
+		OpponentModel model = new OpponentModel(utilSpace);
+		OpponentModelPipeline pipeline = new OpponentModelPipeline(model, false, scheduler);
+
+		Random script = new Random(0);
+		Bid[] previous = new Bid[AGENTS.length];
+		int submitted = 0;
+		boolean failed = false;
+		for(int turn = 0; turn < turns + maxDeferral; turn++) {
+			pipeline.startTurn();
+			//only the bids of the last maxDeferral - 1 turns may still wait
+			int waiting = pipeline.getDeferredCount();
+			if(waiting > AGENTS.length * (maxDeferral - 1)) {
+				System.out.println("turn " + turn + ": " + waiting + " bids deferred for too long");
+				failed = true;
+			}
+			//the last turns receive no bids, so everything must be applied at the end
+			if(turn < turns) {
+				for(int a = 0; a < AGENTS.length; a++) {
+					Bid bid = ScriptedSession.randomBid(domain, script);
+					pipeline.submit(AGENTS[a], bid, previous[a]);
+					previous[a] = bid;
+					submitted++;
+				}
+			}
+		}
+
+		System.out.println(submitted + " bids submitted, " + scheduler.getApplied() + " applied, "
+				+ pipeline.getDeferredCount() + " deferred, " + model.getAgentCount() + " agents in the model");
+		if(failed || scheduler.getApplied() != submitted || model.getAgentCount() != AGENTS.length) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package ai2016.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Generates additive discrete domains and utility profiles in the XML format
+ * of Genius. Every issue has the same number of values, so a domain has
+ * values^issues outcomes.
+ *
+ * Usage: DomainGenerator issues values equal|random|skewed seed out-dir [profiles]
+ */
+public class DomainGenerator {
+	/**
+	 * How the weights of the issues are drawn.
+	 */
+	public enum WeightDistribution {
+		//all issues weigh the same
+		EQUAL,
+		//uniformly random weights, normalized
+		RANDOM,
+		//every issue weighs half of the previous one, in random order
+		SKEWED
+	}
+
+	private final String name;
+	private final int issues;
+	private final int values;
+	private final WeightDistribution distribution;
+	private final Random random;
+
+	/**
+	 * Constructor of this class.
+	 * @param name
+	 * 			name of the domain
+	 * @param issues
+	 * 			number of issues
+	 * @param values
+	 * 			number of values per issue
+	 * @param distribution
+	 * 			distribution of the issue weights of the profiles
+	 * @param seed
+	 * 			seed of the profiles
+	 */
+	public DomainGenerator(String name, int issues, int values, WeightDistribution distribution, long seed) {
+		this.name = name;
+		this.issues = issues;
+		this.values = values;
+		this.distribution = distribution;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Returns the number of outcomes of the domain.
+	 * @return values^issues, at most Long.MAX_VALUE
+	 */
+	public long getOutcomeCount() {
+		long count = 1;
+		for(int i = 0; i < issues; i++) {
+			count = count > Long.MAX_VALUE / values ? Long.MAX_VALUE : count * values;
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the domain.
+	 * @param file
+	 * 			the domain file
+	 * @throws IOException if the file can not be written
+	 */
+	public void writeDomain(File file) throws IOException {
+		try(PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+			out.println("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+			out.println("<negotiation_template>");
+			out.println("<utility_space number_of_issues=\"" + issues + "\">");
+			out.println("\t<objective index=\"0\" etype=\"objective\" type=\"objective\" description=\"\" name=\"" + name + "\">");
+			for(int i = 1; i <= issues; i++) {
+				out.println("\t\t<issue name=\"issue" + i + "\" index=\"" + i + "\" etype=\"discrete\" type=\"discrete\" vtype=\"discrete\">");
+				for(int v = 1; v <= values; v++) {
+					out.println("\t\t\t<item index=\"" + v + "\" value=\"value" + v + "\" cost=\"0.0\" description=\"\"></item>");
+				}
+				out.println("\t\t</issue>");
+			}
+			out.println("\t</objective>");
+			out.println("</utility_space>");
+			out.println("</negotiation_template>");
+		}
+	}
+
+	/**
+	 * Writes a new random profile for the domain.
+	 * @param file
+	 * 			the profile file
+	 * @throws IOException if the file can not be written
+	 */
+	public void writeProfile(File file) throws IOException {
+		double[] weights = drawWeights();
+		try(PrintWriter out = new PrintWriter(file, StandardCharsets.UTF_8.name())) {
+			out.println("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>");
+			out.println("<utility_space>");
+			out.println("\t<objective index=\"0\" etype=\"objective\" type=\"objective\" description=\"\" name=\"" + name + "\">");
+			for(int i = 1; i <= issues; i++) {
+				out.println("\t\t<issue index=\"" + i + "\" etype=\"discrete\" type=\"discrete\" vtype=\"discrete\" name=\"issue" + i + "\">");
+				//at least one value has the maximum evaluation
+				int best = 1 + random.nextInt(values);
+				for(int v = 1; v <= values; v++) {
+					int evaluation = v == best ? 100 : 1 + random.nextInt(100);
+					out.println("\t\t\t<item index=\"" + v + "\" value=\"value" + v + "\" evaluation=\"" + evaluation + "\" />");
+				}
+				out.println("\t\t</issue>");
+				out.println("\t\t<weight index=\"" + i + "\" value=\"" + weights[i - 1] + "\" />");
+			}
+			out.println("\t</objective>");
+			out.println("\t<discount_factor value=\"1.0\" />");
+			out.println("\t<reservation value=\"0.0\" />");
+			out.println("</utility_space>");
+		}
+	}
+
+	/**
+	 * Draws normalized weights for the issues.
+	 */
+	private double[] drawWeights() {
+		double[] weights = new double[issues];
+		double sum = 0;
+		for(int i = 0; i < issues; i++) {
+			switch(distribution) {
+			case EQUAL:
+				weights[i] = 1.0;
+				break;
+			case RANDOM:
+				weights[i] = random.nextDouble() + 1e-6;
+				break;
+			case SKEWED:
+				weights[i] = Math.pow(0.5, i);
+				break;
+			}
+			sum += weights[i];
+		}
+		//shuffle, so the heaviest issue is not always the first
+		for(int i = issues - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			double weight = weights[i];
+			weights[i] = weights[j];
+			weights[j] = weight;
+		}
+		for(int i = 0; i < issues; i++) {
+			weights[i] /= sum;
+		}
+		return weights;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 5) {
+			System.err.println("Usage: DomainGenerator issues values equal|random|skewed seed out-dir [profiles]");
+			System.exit(2);
+		}
+		int issues = Integer.parseInt(args[0]);
+		int values = Integer.parseInt(args[1]);
+		WeightDistribution distribution = WeightDistribution.valueOf(args[2].toUpperCase());
+		long seed = Long.parseLong(args[3]);
+		File dir = new File(args[4]);
+		int profiles = args.length > 5 ? Integer.parseInt(args[5]) : 2;
+		dir.mkdirs();
+
+		String name = "synthetic_" + issues + "x" + values;
+		DomainGenerator generator = new DomainGenerator(name, issues, values, distribution, seed);
+		generator.writeDomain(new File(dir, name + ".xml"));
+		for(int p = 1; p <= profiles; p++) {
+			generator.writeProfile(new File(dir, name + "_profile" + p + ".xml"));
+		}
+		System.out.println("Generated " + name + " with " + generator.getOutcomeCount() + " outcomes and "
+				+ profiles + " profiles in " + dir);
+	}
+}
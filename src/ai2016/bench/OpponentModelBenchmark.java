@@ -0,0 +1,346 @@
+package ai2016.bench;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ai2016.OpponentModel;
+import boaexamplepackage.HardHeadedFrequencyModel;
+import negotiator.Bid;
+import negotiator.Domain;
+import negotiator.bidding.BidDetails;
+import negotiator.boaframework.NegotiationSession;
+import negotiator.session.DiscreteTimeline;
+import negotiator.utility.AdditiveUtilitySpace;
+
+/**
+ * Compares the accuracy of the opponent models with their cost. Scripted
+ * opponents with known profiles concede over time, and their offers are fed
+ * to every model. At regular checkpoints the estimates of the models are
+ * compared with the true utilities of the opponents on a fixed sample of
+ * bids, and the time of the updates and evaluations and the memory that the
+ * models retain are measured.
+ *
+ * Usage: OpponentModelBenchmark domain-file opponent-profile[,opponent-profile...] [rounds] [sessions] [csv-file]
+ */
+public class OpponentModelBenchmark {
+	//number of bids on which the estimates are compared
+	private static final int SAMPLE_SIZE = 500;
+	//number of checkpoints per session
+	private static final int CHECKPOINTS = 10;
+	//number of random bids the opponents choose their offer from
+	private static final int CANDIDATES = 200;
+	//concession exponent of the opponents, below 1 is boulware
+	private static final double CONCESSION = 0.2;
+	//the opponents do not concede below this utility
+	private static final double RESERVATION = 0.5;
+	//number of times the evaluation sample is scored to time the evaluations
+	private static final int EVALUATION_REPEATS = 10;
+	//keeps the timed evaluations from being optimized away
+	private static volatile double sink;
+
+	/**
+	 * A model under test, which learns all opponents of a session.
+	 */
+	interface Model {
+		/**
+		 * Feeds an offer of an opponent to the model.
+		 * @param opponent
+		 * 			index of the opponent
+		 * @param bid
+		 * 			the offer
+		 * @param previousBid
+		 * 			the previous offer of that opponent, or null
+		 * @param time
+		 * 			the normalized time of the offer
+		 */
+		void update(int opponent, Bid bid, Bid previousBid, double time);
+
+		/**
+		 * Estimates the utility of a bid for an opponent.
+		 * @param opponent
+		 * 			index of the opponent
+		 * @param bid
+		 * 			the bid
+		 * @return the estimate
+		 */
+		double evaluate(int opponent, Bid bid);
+	}
+
+	/**
+	 * The model of Group7, which learns all opponents in a single model.
+	 */
+	static class Group7Model implements Model {
+		private final OpponentModel model;
+
+		Group7Model(AdditiveUtilitySpace utilSpace) {
+			model = new OpponentModel(utilSpace);
+		}
+
+		@Override
+		public void update(int opponent, Bid bid, Bid previousBid, double time) {
+			model.update(opponent, bid, previousBid);
+		}
+
+		@Override
+		public double evaluate(int opponent, Bid bid) {
+			return model.getOpponentUtility(opponent, bid);
+		}
+	}
+
+	/**
+	 * The HardHeaded frequency model of the BOA framework, one per opponent,
+	 * each with a negotiation session that holds the offers of its opponent.
+	 */
+	static class HardHeadedModel implements Model {
+		private final NegotiationSession[] sessions;
+		private final HardHeadedFrequencyModel[] models;
+
+		HardHeadedModel(AdditiveUtilitySpace utilSpace, DiscreteTimeline timeline, int opponents) throws Exception {
+			sessions = new NegotiationSession[opponents];
+			models = new HardHeadedFrequencyModel[opponents];
+			for(int o = 0; o < opponents; o++) {
+				sessions[o] = new NegotiationSession(null, utilSpace, timeline);
+				models[o] = new HardHeadedFrequencyModel();
+				models[o].init(sessions[o], null);
+			}
+		}
+
+		@Override
+		public void update(int opponent, Bid bid, Bid previousBid, double time) {
+			//the model reads the offers from the history of the session
+			sessions[opponent].getOpponentBidHistory().add(new BidDetails(bid, 0.0, time));
+			models[opponent].updateModel(bid, time);
+		}
+
+		@Override
+		public double evaluate(int opponent, Bid bid) {
+			return models[opponent].getBidEvaluation(bid);
+		}
+	}
+
+	/**
+	 * Measurements of a model, summed over the sessions.
+	 */
+	static class Result {
+		final String name;
+		final double[] error = new double[CHECKPOINTS];
+		final double[] correlation = new double[CHECKPOINTS];
+		long updates, updateNanos;
+		long evaluations, evaluationNanos;
+		long retainedBytes;
+		int sessions;
+
+		Result(String name) {
+			this.name = name;
+		}
+	}
+
+	/**
+	 * Chooses the offer of a scripted opponent: of a number of random bids,
+	 * the one with the lowest utility that still meets its target.
+	 */
+	private static Bid chooseOffer(Domain domain, AdditiveUtilitySpace profile, double time, Random random) {
+		double target = 1.0 - (1.0 - RESERVATION) * Math.pow(time, 1.0 / CONCESSION);
+		Bid offer = null, best = null;
+		double offerUtility = Double.POSITIVE_INFINITY, bestUtility = Double.NEGATIVE_INFINITY;
+		for(int c = 0; c < CANDIDATES; c++) {
+			Bid bid = ScriptedSession.randomBid(domain, random);
+			double utility = utilityOf(profile, bid);
+			if(utility >= target && utility < offerUtility) {
+				offer = bid;
+				offerUtility = utility;
+			}
+			if(utility > bestUtility) {
+				best = bid;
+				bestUtility = utility;
+			}
+		}
+		//if no candidate meets the target, the best one is offered
+		return offer != null ? offer : best;
+	}
+
+	private static double utilityOf(AdditiveUtilitySpace profile, Bid bid) {
+		try {
+			return profile.getUtility(bid);
+		} catch(Exception e) {
+			return 0.0;
+		}
+	}
+
+	/**
+	 * Plays a session and adds the measurements of a model to its result.
+	 * @param result
+	 * 			the result of the model
+	 * @param kind
+	 * 			0 for the model of Group7, 1 for the HardHeaded model
+	 * @param domain
+	 * 			the domain
+	 * @param profiles
+	 * 			the true profiles of the opponents
+	 * @param sample
+	 * 			the bids on which the estimates are compared
+	 * @param seed
+	 * 			the session seed, which fixes the offers of the opponents
+	 * @param rounds
+	 * 			number of rounds
+	 */
+	static void play(Result result, int kind, Domain domain, List<AdditiveUtilitySpace> profiles,
+			List<Bid> sample, long seed, int rounds) throws Exception {
+		Random script = new Random(seed);
+		DiscreteTimeline timeline = new DiscreteTimeline(rounds);
+		int opponents = profiles.size();
+
+		long before = ScalingReport.usedMemory();
+		Model model = kind == 0 ? new Group7Model(profiles.get(0)) : new HardHeadedModel(profiles.get(0), timeline, opponents);
+
+		Bid[] previous = new Bid[opponents];
+		int checkpoint = 0;
+		for(int round = 0; round < rounds; round++) {
+			double time = (double) round / rounds;
+			for(int o = 0; o < opponents; o++) {
+				Bid bid = chooseOffer(domain, profiles.get(o), time, script);
+				long start = System.nanoTime();
+				model.update(o, bid, previous[o], time);
+				result.updateNanos += System.nanoTime() - start;
+				result.updates++;
+				previous[o] = bid;
+			}
+			timeline.increment();
+
+			if((round + 1) * CHECKPOINTS >= (checkpoint + 1) * rounds) {
+				double error = 0, correlation = 0;
+				for(int o = 0; o < opponents; o++) {
+					double[] estimates = new double[sample.size()];
+					double[] truth = new double[sample.size()];
+					for(int i = 0; i < sample.size(); i++) {
+						estimates[i] = model.evaluate(o, sample.get(i));
+						truth[i] = utilityOf(profiles.get(o), sample.get(i));
+						error += Math.abs(estimates[i] - truth[i]);
+					}
+					correlation += correlation(estimates, truth);
+				}
+				result.error[checkpoint] += error / (opponents * sample.size());
+				result.correlation[checkpoint] += correlation / opponents;
+				checkpoint++;
+			}
+		}
+		result.retainedBytes += ScalingReport.usedMemory() - before;
+
+		//time the evaluations of the trained model
+		double sum = 0;
+		long start = System.nanoTime();
+		for(int r = 0; r < EVALUATION_REPEATS; r++) {
+			for(int o = 0; o < opponents; o++) {
+				for(Bid bid : sample) {
+					sum += model.evaluate(o, bid);
+				}
+			}
+		}
+		result.evaluationNanos += System.nanoTime() - start;
+		result.evaluations += (long) EVALUATION_REPEATS * opponents * sample.size();
+		result.sessions++;
+		sink = sum;
+	}
+
+	/**
+	 * Computes the Pearson correlation, 0 if either side is constant.
+	 */
+	private static double correlation(double[] x, double[] y) {
+		double meanX = 0, meanY = 0;
+		for(int i = 0; i < x.length; i++) {
+			meanX += x[i];
+			meanY += y[i];
+		}
+		meanX /= x.length;
+		meanY /= y.length;
+		double covariance = 0, varianceX = 0, varianceY = 0;
+		for(int i = 0; i < x.length; i++) {
+			covariance += (x[i] - meanX) * (y[i] - meanY);
+			varianceX += (x[i] - meanX) * (x[i] - meanX);
+			varianceY += (y[i] - meanY) * (y[i] - meanY);
+		}
+		return varianceX > 0 && varianceY > 0 ? covariance / Math.sqrt(varianceX * varianceY) : 0.0;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 2) {
+			System.err.println("Usage: OpponentModelBenchmark domain-file opponent-profile[,opponent-profile...] [rounds] [sessions] [csv-file]");
+			System.exit(2);
+		}
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+		int sessions = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		File csv = args.length > 4 ? new File(args[4]) : null;
+
+		Domain domain = new Domain(args[0]);
+		List<AdditiveUtilitySpace> profiles = new ArrayList<AdditiveUtilitySpace>();
+		for(String file : args[1].split(",")) {
+			profiles.add(new AdditiveUtilitySpace(domain, file));
+		}
+		List<Bid> sample = new ArrayList<Bid>(SAMPLE_SIZE);
+		Random random = new Random(-1);
+		for(int i = 0; i < SAMPLE_SIZE; i++) {
+			sample.add(ScriptedSession.randomBid(domain, random));
+		}
+
+		Result[] results = { new Result("ai2016.OpponentModel"), new Result("HardHeadedFrequencyModel") };
+		for(int seed = 0; seed < sessions; seed++) {
+			for(int kind = 0; kind < results.length; kind++) {
+				play(results[kind], kind, domain, profiles, sample, seed, rounds);
+			}
+		}
+
+		//error over time
+		StringBuilder header = new StringBuilder(String.format("%-26s", "mean absolute error at t"));
+		for(int c = 1; c <= CHECKPOINTS; c++) {
+			header.append(String.format(" %6.2f", (double) c / CHECKPOINTS));
+		}
+		System.out.println(header);
+		for(Result result : results) {
+			StringBuilder line = new StringBuilder(String.format("%-26s", result.name));
+			for(int c = 0; c < CHECKPOINTS; c++) {
+				line.append(String.format(" %6.3f", result.error[c] / result.sessions));
+			}
+			System.out.println(line);
+		}
+		System.out.println();
+		System.out.println(header.toString().replace("mean absolute error", "correlation        "));
+		for(Result result : results) {
+			StringBuilder line = new StringBuilder(String.format("%-26s", result.name));
+			for(int c = 0; c < CHECKPOINTS; c++) {
+				line.append(String.format(" %6.3f", result.correlation[c] / result.sessions));
+			}
+			System.out.println(line);
+		}
+
+		//cost
+		System.out.println();
+		System.out.println(String.format("%-26s %14s %14s %14s", "cost", "updates/s", "evaluations/s", "bytes"));
+		for(Result result : results) {
+			System.out.println(String.format("%-26s %14d %14d %14d", result.name,
+					Math.round(result.updates / (result.updateNanos / 1e9)),
+					Math.round(result.evaluations / (result.evaluationNanos / 1e9)),
+					result.retainedBytes / result.sessions));
+		}
+
+		if(csv != null) {
+			try(PrintWriter out = new PrintWriter(csv, StandardCharsets.UTF_8.name())) {
+				out.println("model,time,mean_absolute_error,correlation,updates_per_s,evaluations_per_s,retained_bytes");
+				for(Result result : results) {
+					for(int c = 0; c < CHECKPOINTS; c++) {
+						out.println(result.name + "," + (double) (c + 1) / CHECKPOINTS + ","
+								+ result.error[c] / result.sessions + "," + result.correlation[c] / result.sessions + ","
+								+ result.updates / (result.updateNanos / 1e9) + ","
+								+ result.evaluations / (result.evaluationNanos / 1e9) + ","
+								+ result.retainedBytes / result.sessions);
+					}
+				}
+			}
+			System.out.println();
+			System.out.println("Results written to " + csv);
+		}
+	}
+}
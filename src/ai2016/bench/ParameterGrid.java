@@ -0,0 +1,127 @@
+package ai2016.bench;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+import negotiator.boaframework.BOAparameter;
+
+/**
+ * The search space of a parameter sweep. Every parameter is an axis with a
+ * finite list of values, the configurations are the cartesian product of all
+ * axes. Configurations are decoded lazily from their index, so the grid never
+ * has to be materialized.
+ */
+public class ParameterGrid {
+	//axes sorted on parameter name, so configuration indices are stable between runs
+	private TreeMap<String, double[]> axes = new TreeMap<String, double[]>();
+
+	/**
+	 * Adds an axis for each of the declared parameters of a BOA component.
+	 * Parameters that already have an axis are left untouched.
+	 * @param parameters
+	 * 			the result of getParameters() of a BOA component
+	 * @return this grid
+	 */
+	public ParameterGrid add(Set<BOAparameter> parameters) {
+		for(BOAparameter p : parameters) {
+			if(!axes.containsKey(p.getName())) {
+				axes.put(p.getName(), expand(p.getLow(), p.getHigh(), p.getStep()));
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the axis of a parameter to the values low, low + step, ..., high.
+	 * @param name
+	 * 			name of the parameter
+	 * @param low
+	 * 			first value
+	 * @param high
+	 * 			last value (inclusive)
+	 * @param step
+	 * 			distance between two values
+	 * @return this grid
+	 */
+	public ParameterGrid range(String name, double low, double high, double step) {
+		axes.put(name, expand(BigDecimal.valueOf(low), BigDecimal.valueOf(high), BigDecimal.valueOf(step)));
+		return this;
+	}
+
+	/**
+	 * Sets the axis of a parameter to a fixed list of values.
+	 * @param name
+	 * 			name of the parameter
+	 * @param values
+	 * 			the values to try
+	 * @return this grid
+	 */
+	public ParameterGrid values(String name, double... values) {
+		axes.put(name, values.clone());
+		return this;
+	}
+
+	/**
+	 * Returns the parameter names in the order of the axes.
+	 * @return the names of all parameters
+	 */
+	public List<String> getNames() {
+		return new ArrayList<String>(axes.keySet());
+	}
+
+	/**
+	 * Returns the number of configurations in this grid.
+	 * @return the product of the axis lengths
+	 */
+	public long size() {
+		long size = 1;
+		for(double[] axis : axes.values()) {
+			size *= axis.length;
+		}
+		return size;
+	}
+
+	/**
+	 * Decodes a configuration from its index.
+	 * @param index
+	 * 			a number between 0 and size()
+	 * @return the parameters in the format that the init methods of the BOA components expect
+	 */
+	public HashMap<String, Double> get(long index) {
+		HashMap<String, Double> configuration = new HashMap<String, Double>();
+		//mixed radix decoding, the last axis changes fastest
+		long rest = index;
+		List<Entry<String, double[]>> entries = new ArrayList<Entry<String, double[]>>(axes.entrySet());
+		for(int i = entries.size() - 1; i >= 0; i--) {
+			double[] axis = entries.get(i).getValue();
+			configuration.put(entries.get(i).getKey(), axis[(int) (rest % axis.length)]);
+			rest /= axis.length;
+		}
+		return configuration;
+	}
+
+	/**
+	 * Expands a range to its values. A BOA parameter declared with only a
+	 * default value has low == high, which results in a single value.
+	 */
+	private static double[] expand(BigDecimal low, BigDecimal high, BigDecimal step) {
+		if(high.compareTo(low) <= 0 || step.signum() <= 0) {
+			return new double[] { low.doubleValue() };
+		}
+		ArrayList<Double> values = new ArrayList<Double>();
+		//BigDecimal steps, so 0.1 + 0.1 + 0.1 does not drift past the upper bound
+		for(BigDecimal v = low; v.compareTo(high) <= 0; v = v.add(step)) {
+			values.add(v.doubleValue());
+		}
+		double[] result = new double[values.size()];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = values.get(i);
+		}
+		return result;
+	}
+}
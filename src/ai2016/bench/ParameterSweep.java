@@ -0,0 +1,180 @@
+package ai2016.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import boaexamplepackage.AC_Next;
+import boaexamplepackage.BestBid;
+import boaexamplepackage.HardHeadedFrequencyModel;
+import boaexamplepackage.TimeDependent_Offering;
+
+/**
+ * Sweeps the parameter space of the BOA components. Every configuration of the
+ * grid is played against every simulated opponent for a number of
+ * repetitions. The sessions run in parallel and the results are streamed into
+ * a ColumnarResultFile.
+ */
+public class ParameterSweep {
+	private final ParameterGrid grid;
+	private final SimulatedSession[] scenarios;
+	private final double[] opponentEs;
+	private final int repetitions;
+
+	/**
+	 * Constructor of this class.
+	 * @param grid
+	 * 			the configurations to try
+	 * @param scenarios
+	 * 			the domains and profiles to play on
+	 * @param opponentEs
+	 * 			concession factors of the simulated opponents
+	 * @param repetitions
+	 * 			number of sessions per configuration, scenario and opponent
+	 */
+	public ParameterSweep(ParameterGrid grid, SimulatedSession[] scenarios, double[] opponentEs, int repetitions) {
+		this.grid = grid;
+		this.scenarios = scenarios;
+		this.opponentEs = opponentEs;
+		this.repetitions = repetitions;
+	}
+
+	/**
+	 * Creates a grid with an axis for every parameter that the BOA components
+	 * in boaexamplepackage declare.
+	 * @return the grid with the declared defaults
+	 */
+	public static ParameterGrid declaredGrid() {
+		return new ParameterGrid()
+				.add(new AC_Next().getParameters())
+				.add(new TimeDependent_Offering().getParameters())
+				.add(new HardHeadedFrequencyModel().getParameters())
+				.add(new BestBid().getParameters());
+	}
+
+	/**
+	 * Runs the sweep.
+	 * @param output
+	 * 			the file to write the results to
+	 * @param threads
+	 * 			number of worker threads
+	 * @return number of sessions played
+	 * @throws Exception
+	 */
+	public long run(File output, int threads) throws Exception {
+		final List<String> names = grid.getNames();
+		List<String> columns = new ArrayList<String>();
+		columns.add("config");
+		columns.add("scenario");
+		columns.add("opponent");
+		columns.add("repetition");
+		columns.addAll(names);
+		columns.add("agreement");
+		columns.add("rounds");
+		columns.add("ownUtility");
+		columns.add("opponentUtility");
+		columns.add("durationNanos");
+
+		final AtomicLong played = new AtomicLong();
+		final long size = grid.size();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try(final ColumnarResultFile.Writer writer = new ColumnarResultFile.Writer(output, columns)) {
+			//one task per configuration, so a task can reuse the decoded parameters
+			List<Future<?>> tasks = new ArrayList<Future<?>>();
+			for(long c = 0; c < size; c++) {
+				final long config = c;
+				tasks.add(executor.submit(() -> {
+					HashMap<String, Double> parameters = grid.get(config);
+					double[] row = new double[names.size() + 9];
+					for(int s = 0; s < scenarios.length; s++) {
+						for(int o = 0; o < opponentEs.length; o++) {
+							for(int r = 0; r < repetitions; r++) {
+								SimulatedSession.Result result = scenarios[s].run(parameters, opponentEs[o], seed(config, s, o, r));
+								int col = 0;
+								row[col++] = config;
+								row[col++] = s;
+								row[col++] = o;
+								row[col++] = r;
+								for(String name : names) {
+									row[col++] = parameters.get(name);
+								}
+								row[col++] = result.agreement ? 1 : 0;
+								row[col++] = result.rounds;
+								row[col++] = result.ownUtility;
+								row[col++] = result.opponentUtility;
+								row[col++] = result.durationNanos;
+								writer.append(row);
+								played.incrementAndGet();
+							}
+						}
+					}
+					return null;
+				}));
+			}
+			//wait for all tasks, rethrowing the first failure
+			for(Future<?> task : tasks) {
+				task.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		return played.get();
+	}
+
+	/**
+	 * Seed of a single session, independent of the thread that runs it.
+	 */
+	private static long seed(long config, int scenario, int opponent, int repetition) {
+		long h = config * 0x9E3779B97F4A7C15L;
+		h = (h ^ scenario) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ opponent) * 0x94D049BB133111EBL;
+		return h ^ repetition;
+	}
+
+	/**
+	 * Runs a sweep over the concession and acceptance parameters.
+	 * Usage: ParameterSweep output-file [threads] [repetitions]
+	 * @param args
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if(args.length < 1) {
+			System.err.println("Usage: ParameterSweep output-file [threads] [repetitions]");
+			return;
+		}
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+		//the declared defaults, widened on the parameters that matter most
+		ParameterGrid grid = declaredGrid()
+				.range("e", 0.1, 2.0, 0.1)
+				.range("a", 0.9, 1.1, 0.05)
+				.range("b", 0.0, 0.1, 0.02)
+				.values("l", 0.1, 0.2, 0.3)
+				.values("t", 0.5, 1.1);
+
+		//three random domains of increasing size
+		Random random = new Random(7);
+		int[][] domains = { { 4, 4, 4 }, { 5, 5, 5, 5 }, { 6, 4, 5, 3, 4 } };
+		SimulatedSession[] scenarios = new SimulatedSession[domains.length];
+		for(int s = 0; s < domains.length; s++) {
+			scenarios[s] = new SimulatedSession(SimulatedProfile.random(domains[s], random),
+					SimulatedProfile.random(domains[s], random), 200);
+		}
+		//boulware, linear and conceder opponents
+		double[] opponents = { 0.2, 1.0, 2.0 };
+
+		ParameterSweep sweep = new ParameterSweep(grid, scenarios, opponents, repetitions);
+		long start = System.currentTimeMillis();
+		long played = sweep.run(new File(args[0]), threads);
+		System.out.println(grid.size() + " configurations, " + played + " sessions in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+}
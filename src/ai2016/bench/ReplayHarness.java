@@ -0,0 +1,145 @@
+package ai2016.bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+import negotiator.Domain;
+import negotiator.actions.Action;
+import negotiator.actions.Offer;
+import negotiator.utility.AdditiveUtilitySpace;
+
+/**
+ * Replays fixed-seed sessions of Group7 against scripted opponents in
+ * deterministic mode and compares them with a recorded baseline. A session
+ * is summarized by a checksum over all actions of the agent, so any change
+ * in a decision shows up, and by its throughput in turns per second.
+ *
+ * Usage: ReplayHarness domain-file profile-file baseline-file [record] [sessions] [rounds]
+ * With record, the baseline is written instead of checked. The exit code is
+ * 1 if a decision changed or the throughput dropped more than the tolerance.
+ */
+public class ReplayHarness {
+	//allowed drop in throughput before it is flagged
+	private static final double THROUGHPUT_TOLERANCE = 0.2;
+
+	/**
+	 * Summary of a single session.
+	 */
+	static class Replay {
+		long checksum;
+		int turns;
+		long nanos;
+	}
+
+	/**
+	 * Plays a single session, see ScriptedSession.
+	 * @param domain
+	 * 			the domain
+	 * @param utilSpace
+	 * 			the profile of Group7
+	 * @param seed
+	 * 			the session seed
+	 * @param rounds
+	 * 			number of rounds
+	 * @return the summary
+	 */
+	static Replay play(Domain domain, AdditiveUtilitySpace utilSpace, long seed, int rounds) {
+		final Replay replay = new Replay();
+		final CRC32 checksum = new CRC32();
+		ScriptedSession session = new ScriptedSession(domain, utilSpace, seed, seed, rounds);
+		session.init();
+		replay.turns = session.play(new ScriptedSession.Rounds() {
+			private long start;
+
+			@Override
+			public void start(int round) {
+				start = System.nanoTime();
+			}
+
+			@Override
+			public void end(int round, Action action) {
+				replay.nanos += System.nanoTime() - start;
+				checksum.update(describe(action).getBytes(StandardCharsets.UTF_8));
+			}
+		});
+		replay.checksum = checksum.getValue();
+		return replay;
+	}
+
+	private static String describe(Action action) {
+		if(action instanceof Offer) {
+			return "Offer " + ((Offer) action).getBid() + ";";
+		}
+		return action.getClass().getSimpleName() + ";";
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 3) {
+			System.err.println("Usage: ReplayHarness domain-file profile-file baseline-file [record] [sessions] [rounds]");
+			System.exit(2);
+		}
+		boolean record = args.length > 3 && args[3].equals("record");
+		int offset = record ? 4 : 3;
+		int sessions = args.length > offset ? Integer.parseInt(args[offset]) : 10;
+		int rounds = args.length > offset + 1 ? Integer.parseInt(args[offset + 1]) : 200;
+
+		System.setProperty("ai2016.deterministic", "true");
+		Domain domain = new Domain(args[0]);
+		AdditiveUtilitySpace utilSpace = new AdditiveUtilitySpace(domain, args[1]);
+
+		//play all sessions
+		Properties current = new Properties();
+		long turns = 0, nanos = 0;
+		for(int seed = 0; seed < sessions; seed++) {
+			Replay replay = play(domain, utilSpace, seed, rounds);
+			current.setProperty("session." + seed + ".checksum", Long.toString(replay.checksum));
+			current.setProperty("session." + seed + ".turns", Integer.toString(replay.turns));
+			turns += replay.turns;
+			nanos += replay.nanos;
+		}
+		double throughput = turns / (nanos / 1e9);
+		current.setProperty("throughput", Double.toString(throughput));
+		System.out.println(sessions + " sessions, " + turns + " turns, " + Math.round(throughput) + " turns/s");
+
+		File baselineFile = new File(args[2]);
+		if(record) {
+			try(OutputStream out = new FileOutputStream(baselineFile)) {
+				current.store(out, "ReplayHarness baseline, " + sessions + " sessions of " + rounds + " rounds");
+			}
+			System.out.println("Baseline written to " + baselineFile);
+			return;
+		}
+
+		//compare with the baseline
+		Properties baseline = new Properties();
+		try(InputStream in = new FileInputStream(baselineFile)) {
+			baseline.load(in);
+		}
+		boolean failed = false;
+		for(int seed = 0; seed < sessions; seed++) {
+			String key = "session." + seed + ".checksum";
+			if(baseline.getProperty(key) != null && !baseline.getProperty(key).equals(current.getProperty(key))) {
+				System.out.println("Decisions changed in session " + seed + " (turns "
+						+ baseline.getProperty("session." + seed + ".turns") + " -> "
+						+ current.getProperty("session." + seed + ".turns") + ")");
+				failed = true;
+			}
+		}
+		double baselineThroughput = Double.parseDouble(baseline.getProperty("throughput", "0"));
+		if(throughput < baselineThroughput * (1 - THROUGHPUT_TOLERANCE)) {
+			System.out.println("Throughput dropped from " + Math.round(baselineThroughput) + " to "
+					+ Math.round(throughput) + " turns/s");
+			failed = true;
+		}
+		if(failed) {
+			System.exit(1);
+		}
+		System.out.println("No changes");
+	}
+}
@@ -0,0 +1,185 @@
+package ai2016.bench;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import negotiator.Domain;
+import negotiator.actions.Action;
+import negotiator.utility.AdditiveUtilitySpace;
+
+/**
+ * Reports how Group7 scales with the size of the domain. Synthetic domains of
+ * a growing number of issues are generated, and for each of them the time of
+ * init (including the construction of the outcome space), the memory that
+ * the agent retains and the latency of a turn are measured, both in
+ * deterministic mode and in the default mode with the asynchronous opponent
+ * model and speculation. In the default mode the outcome space is built on a
+ * background thread, which is waited for, so init covers the build in both. A turn is a round of a ScriptedSession. The results
+ * are written to scaling.csv and plotted on a logarithmic scale.
+ *
+ * Usage: ScalingReport out-dir [max-issues] [values] [rounds]
+ */
+public class ScalingReport {
+	/**
+	 * Measurements of a single domain in one mode.
+	 */
+	static class Row {
+		long outcomes;
+		boolean deterministic;
+		double initMillis;
+		long retainedBytes;
+		double meanTurnMicros;
+		double maxTurnMicros;
+	}
+
+	static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Measures Group7 on a domain.
+	 * @param domain
+	 * 			the domain
+	 * @param utilSpace
+	 * 			the profile of Group7
+	 * @param outcomes
+	 * 			number of outcomes of the domain
+	 * @param rounds
+	 * 			number of rounds of the session
+	 * @param deterministic
+	 * 			whether to run the agent in deterministic mode
+	 * @return the measurements
+	 * @throws InterruptedException if interrupted while waiting for the outcome space
+	 */
+	static Row measure(Domain domain, AdditiveUtilitySpace utilSpace, long outcomes, int rounds, boolean deterministic)
+			throws InterruptedException {
+		final Row row = new Row();
+		row.outcomes = outcomes;
+		row.deterministic = deterministic;
+		System.setProperty("ai2016.deterministic", Boolean.toString(deterministic));
+		//the offers of the opponents are created before the memory is measured
+		ScriptedSession session = new ScriptedSession(domain, utilSpace, 0, 0, rounds);
+
+		long before = usedMemory();
+		long start = System.nanoTime();
+		session.init();
+		awaitOutcomeSpace();
+		row.initMillis = (System.nanoTime() - start) / 1e6;
+		row.retainedBytes = usedMemory() - before;
+
+		final long[] total = new long[1], max = new long[1];
+		int turns = session.play(new ScriptedSession.Rounds() {
+			private long start;
+
+			@Override
+			public void start(int round) {
+				start = System.nanoTime();
+			}
+
+			@Override
+			public void end(int round, Action action) {
+				long nanos = System.nanoTime() - start;
+				total[0] += nanos;
+				max[0] = Math.max(max[0], nanos);
+			}
+		});
+		row.meanTurnMicros = total[0] / 1e3 / turns;
+		row.maxTurnMicros = max[0] / 1e3;
+		return row;
+	}
+	/**
+	 * Waits until the background thread of the agent that builds the outcome space is done.
+	 */
+	private static void awaitOutcomeSpace() throws InterruptedException {
+		for(Thread thread : Thread.getAllStackTraces().keySet()) {
+			if(thread.getName().equals("Group7-outcome-space")) {
+				thread.join();
+			}
+		}
+	}
+
+	private static String modeOf(Row row) {
+		return row.deterministic ? "deterministic" : "default";
+	}
+
+	/**
+	 * Prints a bar per domain, with the length proportional to the logarithm of the value.
+	 */
+	private static void plot(String title, List<Row> rows, double[] values) {
+		System.out.println();
+		System.out.println(title);
+		double low = Double.POSITIVE_INFINITY, high = Double.NEGATIVE_INFINITY;
+		for(double value : values) {
+			low = Math.min(low, Math.log10(Math.max(value, 1e-3)));
+			high = Math.max(high, Math.log10(Math.max(value, 1e-3)));
+		}
+		for(int i = 0; i < rows.size(); i++) {
+			double position = Math.log10(Math.max(values[i], 1e-3));
+			int width = high > low ? 1 + (int) Math.round(49 * (position - low) / (high - low)) : 50;
+			StringBuilder bar = new StringBuilder();
+			for(int j = 0; j < width; j++) {
+				bar.append('#');
+			}
+			System.out.println(String.format("%14d %-13s | %-50s %.3g", rows.get(i).outcomes, modeOf(rows.get(i)), bar, values[i]));
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 1) {
+			System.err.println("Usage: ScalingReport out-dir [max-issues] [values] [rounds]");
+			System.exit(2);
+		}
+		File dir = new File(args[0]);
+		int maxIssues = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+		int values = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+		dir.mkdirs();
+
+		List<Row> rows = new ArrayList<Row>();
+		for(int issues = 2; issues <= maxIssues; issues++) {
+			String name = "synthetic_" + issues + "x" + values;
+			DomainGenerator generator = new DomainGenerator(name, issues, values, DomainGenerator.WeightDistribution.RANDOM, issues);
+			File domainFile = new File(dir, name + ".xml");
+			File profileFile = new File(dir, name + "_profile1.xml");
+			generator.writeDomain(domainFile);
+			generator.writeProfile(profileFile);
+
+			Domain domain = new Domain(domainFile.getPath());
+			AdditiveUtilitySpace utilSpace = new AdditiveUtilitySpace(domain, profileFile.getPath());
+			for(boolean deterministic : new boolean[] { true, false }) {
+				Row row = measure(domain, utilSpace, generator.getOutcomeCount(), rounds, deterministic);
+				rows.add(row);
+				System.out.println(String.format("%d outcomes, %s: init %.1f ms, %d bytes, turn %.1f us (max %.1f us)",
+						row.outcomes, modeOf(row), row.initMillis, row.retainedBytes, row.meanTurnMicros, row.maxTurnMicros));
+			}
+		}
+
+		File csv = new File(dir, "scaling.csv");
+		try(PrintWriter out = new PrintWriter(csv, StandardCharsets.UTF_8.name())) {
+			out.println("outcomes,mode,init_ms,retained_bytes,turn_mean_us,turn_max_us");
+			for(Row row : rows) {
+				out.println(row.outcomes + "," + modeOf(row) + "," + row.initMillis + "," + row.retainedBytes + ","
+						+ row.meanTurnMicros + "," + row.maxTurnMicros);
+			}
+		}
+
+		double[] init = new double[rows.size()], memory = new double[rows.size()], turn = new double[rows.size()];
+		for(int i = 0; i < rows.size(); i++) {
+			init[i] = rows.get(i).initMillis;
+			memory[i] = rows.get(i).retainedBytes;
+			turn[i] = rows.get(i).meanTurnMicros;
+		}
+		plot("init time (ms)", rows, init);
+		plot("retained memory (bytes)", rows, memory);
+		plot("mean turn latency (us)", rows, turn);
+		System.out.println();
+		System.out.println("Results written to " + csv);
+	}
+}
@@ -0,0 +1,153 @@
+package ai2016.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import ai2016.Group7;
+import negotiator.AgentID;
+import negotiator.Bid;
+import negotiator.Deadline;
+import negotiator.DeadlineType;
+import negotiator.Domain;
+import negotiator.actions.Accept;
+import negotiator.actions.Action;
+import negotiator.actions.Offer;
+import negotiator.issue.Issue;
+import negotiator.issue.IssueDiscrete;
+import negotiator.issue.Value;
+import negotiator.session.DiscreteTimeline;
+import negotiator.utility.AbstractUtilitySpace;
+
+/**
+ * A session of Group7 against scripted opponents, shared by the harnesses.
+ * Every round Group7 moves first, after which the scripted opponents each
+ * offer a random bid drawn from the script seed. All offers are created
+ * when the session is created, so a round only runs the agent.
+ *
+ * Whether the agent runs in deterministic mode is decided by the property
+ * ai2016.deterministic when init is called.
+ */
+class ScriptedSession {
+	//names of the scripted opponents
+	private static final String[] OPPONENTS = { "Opponent A", "Opponent B" };
+
+	/**
+	 * Receives the rounds of a session.
+	 */
+	interface Rounds {
+		/**
+		 * Called before the agent moves.
+		 * @param round
+		 * 			the round, from 0
+		 */
+		void start(int round);
+
+		/**
+		 * Called after the agent moved and the opponents answered, or right
+		 * after the agent accepted.
+		 * @param round
+		 * 			the round, from 0
+		 * @param action
+		 * 			the action of the agent
+		 */
+		void end(int round, Action action);
+	}
+
+	private final AbstractUtilitySpace utilSpace;
+	private final long seed;
+	private final int rounds;
+	private final List<Class<? extends Action>> validActions = new ArrayList<Class<? extends Action>>();
+	private final AgentID[] senders = new AgentID[OPPONENTS.length];
+	private final Offer[][] offers;
+
+	private DiscreteTimeline timeline;
+	private Group7 agent;
+
+	/**
+	 * Creates a session and the offers of the opponents.
+	 * @param domain
+	 * 			the domain, with discrete issues only
+	 * @param utilSpace
+	 * 			the profile of Group7
+	 * @param seed
+	 * 			the seed of the agent
+	 * @param scriptSeed
+	 * 			the seed of the offers of the opponents
+	 * @param rounds
+	 * 			number of rounds
+	 */
+	ScriptedSession(Domain domain, AbstractUtilitySpace utilSpace, long seed, long scriptSeed, int rounds) {
+		this.utilSpace = utilSpace;
+		this.seed = seed;
+		this.rounds = rounds;
+		validActions.add(Accept.class);
+		validActions.add(Offer.class);
+		for(int o = 0; o < OPPONENTS.length; o++) {
+			senders[o] = new AgentID(OPPONENTS[o]);
+		}
+		Random script = new Random(scriptSeed);
+		offers = new Offer[rounds][OPPONENTS.length];
+		for(int round = 0; round < rounds; round++) {
+			for(int o = 0; o < OPPONENTS.length; o++) {
+				offers[round][o] = new Offer(senders[o], randomBid(domain, script));
+			}
+		}
+	}
+
+	/**
+	 * Creates and initializes the agent.
+	 * @return the agent
+	 */
+	Group7 init() {
+		timeline = new DiscreteTimeline(rounds);
+		agent = new Group7();
+		agent.init(utilSpace, new Deadline(rounds, DeadlineType.ROUND), timeline, seed, new AgentID("Group7"));
+		return agent;
+	}
+
+	/**
+	 * Plays the rounds until the agent accepts or the deadline is reached,
+	 * then ends the negotiation, which stops the threads of the agent.
+	 * @param hook
+	 * 			receives every round
+	 * @return the number of rounds played
+	 */
+	int play(Rounds hook) {
+		int played = 0;
+		for(int round = 0; round < rounds; round++) {
+			hook.start(round);
+			Action action = agent.chooseAction(validActions);
+			played++;
+			if(action instanceof Accept) {
+				hook.end(round, action);
+				break;
+			}
+			for(int o = 0; o < OPPONENTS.length; o++) {
+				agent.receiveMessage(senders[o], offers[round][o]);
+			}
+			hook.end(round, action);
+			timeline.increment();
+		}
+		agent.negotiationEnded(null);
+		return played;
+	}
+
+	/**
+	 * Draws a random bid of a discrete domain.
+	 * @param domain
+	 * 			the domain
+	 * @param random
+	 * 			the source of the values
+	 * @return the bid
+	 */
+	static Bid randomBid(Domain domain, Random random) {
+		HashMap<Integer, Value> values = new HashMap<Integer, Value>();
+		for(Issue issue : domain.getIssues()) {
+			IssueDiscrete discrete = (IssueDiscrete) issue;
+			values.put(issue.getNumber(), discrete.getValue(random.nextInt(discrete.getNumberOfValues())));
+		}
+		return new Bid(domain, values);
+	}
+}
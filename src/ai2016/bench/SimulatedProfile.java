@@ -0,0 +1,116 @@
+package ai2016.bench;
+
+import java.util.Random;
+
+/**
+ * A linear additive utility profile over a discrete domain, stored as plain
+ * arrays so that local simulations do not need a Genius domain. Outcomes are
+ * encoded as a single long, with the value index of the last issue changing
+ * fastest.
+ */
+public class SimulatedProfile {
+	private final int[] valueCounts;
+	private final double[] weights;
+	//evaluation of each value, normalized so the best value of each issue has evaluation 1
+	private final double[][] evaluations;
+
+	/**
+	 * Constructor of this class.
+	 * @param valueCounts
+	 * 			number of values of each issue
+	 * @param weights
+	 * 			the issue weights, summing to 1
+	 * @param evaluations
+	 * 			the evaluation of each value of each issue, in [0, 1]
+	 */
+	public SimulatedProfile(int[] valueCounts, double[] weights, double[][] evaluations) {
+		this.valueCounts = valueCounts;
+		this.weights = weights;
+		this.evaluations = evaluations;
+	}
+
+	/**
+	 * Generates a random profile with uniformly drawn weights and evaluations.
+	 * @param valueCounts
+	 * 			number of values of each issue
+	 * @param random
+	 * 			source of randomness
+	 * @return the generated profile
+	 */
+	public static SimulatedProfile random(int[] valueCounts, Random random) {
+		double[] weights = new double[valueCounts.length];
+		double[][] evaluations = new double[valueCounts.length][];
+		double sum = 0.0;
+		for(int i = 0; i < valueCounts.length; i++) {
+			weights[i] = random.nextDouble();
+			sum += weights[i];
+
+			//the best value of every issue gets evaluation 1
+			evaluations[i] = new double[valueCounts[i]];
+			int best = random.nextInt(valueCounts[i]);
+			for(int v = 0; v < valueCounts[i]; v++) {
+				evaluations[i][v] = v == best ? 1.0 : random.nextDouble();
+			}
+		}
+		for(int i = 0; i < weights.length; i++) {
+			weights[i] /= sum;
+		}
+		return new SimulatedProfile(valueCounts, weights, evaluations);
+	}
+
+	/**
+	 * Returns the number of outcomes of the domain.
+	 * @return the product of the value counts
+	 */
+	public long getOutcomeCount() {
+		long count = 1;
+		for(int c : valueCounts) {
+			count *= c;
+		}
+		return count;
+	}
+
+	/**
+	 * Computes the utility of an encoded outcome.
+	 * @param outcome
+	 * 			the encoded outcome
+	 * @return the utility of the outcome
+	 */
+	public double getUtility(long outcome) {
+		double utility = 0.0;
+		long rest = outcome;
+		for(int i = valueCounts.length - 1; i >= 0; i--) {
+			utility += weights[i] * evaluations[i][(int) (rest % valueCounts[i])];
+			rest /= valueCounts[i];
+		}
+		return utility;
+	}
+
+	/**
+	 * Returns the value index of one issue of an encoded outcome.
+	 * @param outcome
+	 * 			the encoded outcome
+	 * @param issue
+	 * 			position of the issue
+	 * @return the index of the value of this issue
+	 */
+	public int getValueIndex(long outcome, int issue) {
+		long rest = outcome;
+		for(int i = valueCounts.length - 1; i > issue; i--) {
+			rest /= valueCounts[i];
+		}
+		return (int) (rest % valueCounts[issue]);
+	}
+
+	public int[] getValueCounts() {
+		return valueCounts;
+	}
+
+	public double getWeight(int issue) {
+		return weights[issue];
+	}
+
+	public double getEvaluation(int issue, int value) {
+		return evaluations[issue][value];
+	}
+}
@@ -0,0 +1,235 @@
+package ai2016.bench;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * A local bilateral alternating offers session between a BOA configuration and
+ * a time-dependent opponent. The BOA side follows the decision rules of the
+ * components in boaexamplepackage: TimeDependent_Offering (e, k, min, max)
+ * for the target utility, HardHeadedFrequencyModel (l) to estimate the
+ * opponent, BestBid (t) to pick the best bid for the opponent near the target
+ * and AC_Next (a, b) for acceptance.
+ */
+public class SimulatedSession {
+	//number of bids around the target that BestBid chooses from
+	private static final int WINDOW = 10;
+
+	private final SimulatedProfile ownProfile;
+	private final SimulatedProfile opponentProfile;
+	//all outcomes sorted on utility for both sides
+	private final long[] ownSorted, opponentSorted;
+	private final double[] ownSortedUtils, opponentSortedUtils;
+	private final int rounds;
+
+	/**
+	 * Result of a single session.
+	 */
+	public static class Result {
+		public boolean agreement;
+		public int rounds;
+		public double ownUtility;
+		public double opponentUtility;
+		public long durationNanos;
+	}
+
+	/**
+	 * Constructor of this class. Sorts the outcome space once, so one instance
+	 * can be shared by all threads of a sweep.
+	 * @param ownProfile
+	 * 			profile of the BOA configuration
+	 * @param opponentProfile
+	 * 			profile of the opponent
+	 * @param rounds
+	 * 			number of rounds before the deadline
+	 */
+	public SimulatedSession(SimulatedProfile ownProfile, SimulatedProfile opponentProfile, int rounds) {
+		this.ownProfile = ownProfile;
+		this.opponentProfile = opponentProfile;
+		this.rounds = rounds;
+
+		int n = (int) ownProfile.getOutcomeCount();
+		ownSorted = new long[n];
+		opponentSorted = new long[n];
+		ownSortedUtils = new double[n];
+		opponentSortedUtils = new double[n];
+		sort(ownProfile, ownSorted, ownSortedUtils);
+		sort(opponentProfile, opponentSorted, opponentSortedUtils);
+	}
+
+	/**
+	 * Runs the session.
+	 * @param parameters
+	 * 			the BOA parameters, see ParameterGrid
+	 * @param opponentE
+	 * 			concession factor of the opponent
+	 * @param seed
+	 * 			seed for the random choices of the opponent
+	 * @return the result of the session
+	 */
+	public Result run(HashMap<String, Double> parameters, double opponentE, long seed) {
+		long start = System.nanoTime();
+		Random random = new Random(seed);
+		Result result = new Result();
+
+		double a = get(parameters, "a", 1.0);
+		double b = get(parameters, "b", 0.0);
+		double e = get(parameters, "e", 1.0);
+		double k = get(parameters, "k", 0.0);
+		double min = get(parameters, "min", ownSortedUtils[0]);
+		double max = get(parameters, "max", ownSortedUtils[ownSortedUtils.length - 1]);
+		double l = get(parameters, "l", 0.2);
+		double t = get(parameters, "t", 1.1);
+
+		//frequency model of the opponent, as in HardHeadedFrequencyModel
+		int[] valueCounts = ownProfile.getValueCounts();
+		int issues = valueCounts.length;
+		double[] modelWeights = new double[issues];
+		double[][] modelValues = new double[issues][];
+		for(int i = 0; i < issues; i++) {
+			modelWeights[i] = 1.0 / issues;
+			modelValues[i] = new double[valueCounts[i]];
+			Arrays.fill(modelValues[i], 1.0);
+		}
+
+		long previousOpponentBid = -1;
+		for(int round = 0; round < rounds; round++) {
+			double time = (double) round / rounds;
+
+			//the opponent offers first
+			double opponentTarget = 1.0 - (1.0 - 0.5) * Math.pow(time, 1.0 / opponentE);
+			long opponentBid = pick(opponentSorted, opponentSortedUtils, opponentTarget, random);
+
+			//update the model while BestBid allows it
+			if(time < t && previousOpponentBid >= 0) {
+				updateModel(modelWeights, modelValues, previousOpponentBid, opponentBid, l);
+			}
+			previousOpponentBid = opponentBid;
+
+			//determine our next bid, as in TimeDependent_Offering
+			double ft = e == 0 ? k : k + (1 - k) * Math.pow(time, 1.0 / e);
+			double target = min + (max - min) * (1 - ft);
+			long nextBid = bestForOpponent(target, modelWeights, modelValues);
+
+			//AC_Next
+			if(a * ownProfile.getUtility(opponentBid) + b >= ownProfile.getUtility(nextBid)) {
+				return finish(result, true, round, opponentBid, start);
+			}
+			//the opponent accepts if our bid reaches its current target
+			if(opponentProfile.getUtility(nextBid) >= opponentTarget) {
+				return finish(result, true, round, nextBid, start);
+			}
+		}
+		return finish(result, false, rounds, -1, start);
+	}
+
+	private Result finish(Result result, boolean agreement, int round, long outcome, long start) {
+		result.agreement = agreement;
+		result.rounds = round;
+		result.ownUtility = agreement ? ownProfile.getUtility(outcome) : 0.0;
+		result.opponentUtility = agreement ? opponentProfile.getUtility(outcome) : 0.0;
+		result.durationNanos = System.nanoTime() - start;
+		return result;
+	}
+
+	/**
+	 * Selects the bid with the best estimated opponent utility among the bids
+	 * closest to the target, as BestBid does.
+	 */
+	private long bestForOpponent(double target, double[] modelWeights, double[][] modelValues) {
+		int from = nearest(ownSortedUtils, target);
+		int to = Math.min(ownSorted.length, from + WINDOW);
+		from = Math.max(0, to - WINDOW);
+
+		long best = ownSorted[from];
+		double bestEvaluation = -1;
+		for(int j = from; j < to; j++) {
+			double evaluation = 0.0;
+			for(int i = 0; i < modelWeights.length; i++) {
+				double[] values = modelValues[i];
+				double maxValue = 0.0;
+				for(double v : values) {
+					maxValue = Math.max(maxValue, v);
+				}
+				evaluation += modelWeights[i] * values[ownProfile.getValueIndex(ownSorted[j], i)] / maxValue;
+			}
+			if(evaluation > bestEvaluation) {
+				bestEvaluation = evaluation;
+				best = ownSorted[j];
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * The update rule of HardHeadedFrequencyModel on arrays.
+	 */
+	private void updateModel(double[] modelWeights, double[][] modelValues, long previous, long current, double learnCoef) {
+		int issues = modelWeights.length;
+		int unchanged = 0;
+		for(int i = 0; i < issues; i++) {
+			if(ownProfile.getValueIndex(previous, i) == ownProfile.getValueIndex(current, i)) {
+				unchanged++;
+			}
+		}
+		double goldenValue = learnCoef / issues;
+		double totalSum = 1.0 + goldenValue * unchanged;
+		double maximumWeight = 1.0 - issues * goldenValue / totalSum;
+		for(int i = 0; i < issues; i++) {
+			int value = ownProfile.getValueIndex(current, i);
+			if(ownProfile.getValueIndex(previous, i) == value && modelWeights[i] < maximumWeight) {
+				modelWeights[i] = (modelWeights[i] + goldenValue) / totalSum;
+			} else {
+				modelWeights[i] = modelWeights[i] / totalSum;
+			}
+			modelValues[i][value] += 1.0;
+		}
+	}
+
+	/**
+	 * Picks a random bid out of the bids closest to the target.
+	 */
+	private static long pick(long[] sorted, double[] utils, double target, Random random) {
+		int from = nearest(utils, target);
+		int to = Math.min(sorted.length, from + WINDOW);
+		return sorted[from + random.nextInt(to - from)];
+	}
+
+	/**
+	 * Returns the index of the first bid with a utility of at least the target,
+	 * or the best bid if there is no such bid.
+	 */
+	private static int nearest(double[] utils, double target) {
+		int low = 0;
+		int high = utils.length - 1;
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(utils[mid] < target) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	private static void sort(SimulatedProfile profile, long[] outcomes, double[] utils) {
+		Long[] boxed = new Long[outcomes.length];
+		final double[] all = new double[outcomes.length];
+		for(int o = 0; o < outcomes.length; o++) {
+			boxed[o] = (long) o;
+			all[o] = profile.getUtility(o);
+		}
+		Arrays.sort(boxed, (x, y) -> Double.compare(all[(int) (long) x], all[(int) (long) y]));
+		for(int o = 0; o < outcomes.length; o++) {
+			outcomes[o] = boxed[o];
+			utils[o] = all[(int) outcomes[o]];
+		}
+	}
+
+	private static double get(HashMap<String, Double> parameters, String name, double fallback) {
+		Double value = parameters.get(name);
+		return value != null ? value : fallback;
+	}
+}